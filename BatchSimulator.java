@@ -0,0 +1,323 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// Plays large numbers of complete games headlessly through NumberGuessingLogic to compare player
+// strategies. Games are split into fixed chunks, each with its own seeded targets and random
+// source, so a run with the same seed gives the same report regardless of core count.
+//   java BatchSimulator [games] [seed] [strategy...]
+public class BatchSimulator {
+    private static final int CHUNK_GAMES = 1 << 14;
+    private static final int REPLAY_INTERVAL = 16; // One game in this many is replayed for the enchantment ROI
+
+    // A player. One instance plays all games of a chunk on a single thread and may keep state across them.
+    public interface Strategy {
+        // Called after resetGame and before the starting hint; may activate enchantments
+        void startGame(NumberGuessingLogic game);
+
+        int nextGuess(NumberGuessingLogic game);
+
+        // Hint received with the enchantment flags and attempt count it was generated with;
+        // lastGuess is -1 for the starting hint
+        void onHint(String hint, int lastGuess, int attempts, int enchantmentFlags);
+
+        // TOO_LOW or TOO_HIGH for a guess that did not end the game
+        void onResult(int guess, GuessResult result);
+    }
+
+    public static final Map<String, Function<SplittableRandom, Strategy>> STRATEGIES = new LinkedHashMap<>();
+
+    static {
+        STRATEGIES.put("random", RandomStrategy::new);
+        STRATEGIES.put("binary", random -> new BinarySearchStrategy());
+        STRATEGIES.put("hint-aware", random -> new HintAwareStrategy());
+    }
+
+    // Guesses uniformly among the numbers still consistent with Too low/Too high
+    static final class RandomStrategy implements Strategy {
+        private final SplittableRandom random;
+        private int low;
+        private int high;
+
+        RandomStrategy(SplittableRandom random) {
+            this.random = random;
+        }
+
+        public void startGame(NumberGuessingLogic game) {
+            low = game.getRules().getMinNumber();
+            high = game.getRules().getMaxNumber();
+        }
+
+        public int nextGuess(NumberGuessingLogic game) {
+            return low + random.nextInt(high - low + 1);
+        }
+
+        public void onHint(String hint, int lastGuess, int attempts, int enchantmentFlags) {
+        }
+
+        public void onResult(int guess, GuessResult result) {
+            if (result == GuessResult.TOO_LOW) {
+                low = guess + 1;
+            } else {
+                high = guess - 1;
+            }
+        }
+    }
+
+    static final class BinarySearchStrategy implements Strategy {
+        private int low;
+        private int high;
+
+        public void startGame(NumberGuessingLogic game) {
+            low = game.getRules().getMinNumber();
+            high = game.getRules().getMaxNumber();
+        }
+
+        public int nextGuess(NumberGuessingLogic game) {
+            return (low + high) >>> 1;
+        }
+
+        public void onHint(String hint, int lastGuess, int attempts, int enchantmentFlags) {
+        }
+
+        public void onResult(int guess, GuessResult result) {
+            if (result == GuessResult.TOO_LOW) {
+                low = guess + 1;
+            } else {
+                high = guess - 1;
+            }
+        }
+    }
+
+    // Keeps the set of targets consistent with every result and hint so far as a bitmask and guesses
+    // its median. A target stays in the set only if the hint table gives exactly the observed hint for
+    // it, so every hint rule is used without parsing text. Buys Insight, then Precision, when affordable.
+    // Bit i stands for target minNumber + i, so the range must fit one long.
+    static final class HintAwareStrategy implements Strategy {
+        private long candidates;
+        private HintTable table;
+        private int minNumber;
+
+        public void startGame(NumberGuessingLogic game) {
+            GameRules rules = game.getRules();
+            if (rules.getRangeSize() > Long.SIZE || rules.getHintTable() == null) {
+                throw new IllegalStateException("hint-aware strategy needs a range of at most " + Long.SIZE + " numbers");
+            }
+            table = rules.getHintTable();
+            minNumber = rules.getMinNumber();
+            candidates = rules.getRangeSize() == Long.SIZE ? -1L : (1L << rules.getRangeSize()) - 1;
+            game.activateEnchantment(Enchantment.INSIGHT);
+            game.activateEnchantment(Enchantment.PRECISION);
+        }
+
+        public int nextGuess(NumberGuessingLogic game) {
+            int remaining = Long.bitCount(candidates);
+            long mask = candidates;
+            for (int skip = (remaining - 1) / 2; skip > 0; skip--) {
+                mask &= mask - 1;
+            }
+            return minNumber + Long.numberOfTrailingZeros(mask);
+        }
+
+        public void onHint(String hint, int lastGuess, int attempts, int enchantmentFlags) {
+            long consistent = 0;
+            for (long mask = candidates; mask != 0; mask &= mask - 1) {
+                int bit = Long.numberOfTrailingZeros(mask);
+                String expected = table.lookup(minNumber + bit, lastGuess, attempts, enchantmentFlags);
+                if (hint.equals(expected)) {
+                    consistent |= 1L << bit;
+                }
+            }
+            candidates = consistent;
+        }
+
+        public void onResult(int guess, GuessResult result) {
+            int bit = guess - minNumber;
+            candidates &= result == GuessResult.TOO_LOW ? (bit == Long.SIZE - 1 ? 0 : -1L << (bit + 1)) : (1L << bit) - 1;
+        }
+    }
+
+    // Refuses one enchantment and otherwise plays exactly like NumberGuessingLogic, for replaying a
+    // game without an enchantment its strategy bought
+    private static final class WithholdingGame extends NumberGuessingLogic {
+        Enchantment withheld;
+
+        WithholdingGame(GameRules rules) {
+            super(bound -> 0, () -> rules);
+        }
+
+        @Override
+        public boolean activateEnchantment(Enchantment enchantment) {
+            return enchantment != withheld && super.activateEnchantment(enchantment);
+        }
+    }
+
+    // Outcome counts for a batch of games; chunks are merged into one report
+    public static final class Report {
+        final GameRules rules;
+        long games;
+        long wins;
+        final long[] winsByAttempts; // Second Chance allows one attempt past the rules' maximum
+        final long[] gamesWith = new long[Enchantment.values().length];
+        // Games replayed with the same target and strategy and the enchantment withheld, its cost
+        // unspent, and how many more of them were won with it than without
+        final long[] pairedGames = new long[Enchantment.values().length];
+        final long[] pairedExtraWins = new long[Enchantment.values().length];
+        long pointsEarned;
+        long pointsSpent;
+
+        Report(GameRules rules) {
+            this.rules = rules;
+            winsByAttempts = new long[rules.getMaxAttempts() + 2];
+        }
+
+        Report merge(Report other) {
+            games += other.games;
+            wins += other.wins;
+            for (int i = 0; i < winsByAttempts.length; i++) {
+                winsByAttempts[i] += other.winsByAttempts[i];
+            }
+            for (int i = 0; i < gamesWith.length; i++) {
+                gamesWith[i] += other.gamesWith[i];
+                pairedGames[i] += other.pairedGames[i];
+                pairedExtraWins[i] += other.pairedExtraWins[i];
+            }
+            pointsEarned += other.pointsEarned;
+            pointsSpent += other.pointsSpent;
+            return this;
+        }
+
+        public double winRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        // Extra points won per point spent: the extra wins per game the enchantment brought over the
+        // same games replayed without it, times the win award, divided by its cost. Comparing with the
+        // games that happened not to use it would measure who could afford it instead.
+        public double enchantmentRoi(Enchantment enchantment) {
+            int e = enchantment.ordinal();
+            if (pairedGames[e] == 0) {
+                return Double.NaN;
+            }
+            return (double) pairedExtraWins[e] / pairedGames[e] * rules.getWinPoints() / rules.getCost(enchantment);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("games %,d  win rate %.4f  points earned %,d  spent %,d%n", games, winRate(), pointsEarned, pointsSpent));
+            out.append("wins by attempts:");
+            for (int a = 1; a < winsByAttempts.length; a++) {
+                if (winsByAttempts[a] > 0) {
+                    out.append(String.format("  %d: %.4f", a, (double) winsByAttempts[a] / games));
+                }
+            }
+            out.append(String.format("%n"));
+            for (Enchantment enchantment : Enchantment.values()) {
+                if (gamesWith[enchantment.ordinal()] > 0) {
+                    out.append(String.format("%-14s used in %,d games  ROI %.3f over %,d replays%n", enchantment.getDisplayName(),
+                        gamesWith[enchantment.ordinal()], enchantmentRoi(enchantment), pairedGames[enchantment.ordinal()]));
+                }
+            }
+            return out.toString();
+        }
+    }
+
+    public static Report simulate(Function<SplittableRandom, Strategy> strategy, long games, long seed) {
+        return simulate(strategy, games, seed, GameRules.defaults());
+    }
+
+    public static Report simulate(Function<SplittableRandom, Strategy> strategy, long games, long seed, GameRules rules) {
+        int chunks = (int) ((games + CHUNK_GAMES - 1) / CHUNK_GAMES);
+        return IntStream.range(0, chunks).parallel()
+            .mapToObj(chunk -> runChunk(strategy, Math.min(CHUNK_GAMES, games - (long) chunk * CHUNK_GAMES), seed, chunk, rules))
+            .reduce(Report::merge)
+            .orElseGet(() -> new Report(rules));
+    }
+
+    // Every REPLAY_INTERVAL-th game is replayed once per enchantment it used, with that one withheld.
+    // The replays run on a second strategy instance, so strategies that carry state from game to game
+    // other than through the game itself are only approximately paired.
+    private static Report runChunk(Function<SplittableRandom, Strategy> factory, long games, long seed, int chunk, GameRules rules) {
+        SplittableRandom chunkRandom = new SplittableRandom(seed ^ (chunk * 0x9E3779B97F4A7C15L));
+        NumberGuessingLogic game = new NumberGuessingLogic(TargetSource.seeded(chunkRandom.nextLong()), () -> rules);
+        game.setPrecomputedHints(true);
+        Strategy strategy = factory.apply(chunkRandom.split());
+        WithholdingGame replay = new WithholdingGame(rules);
+        replay.setPrecomputedHints(true);
+        Strategy replayStrategy = factory.apply(chunkRandom.split());
+        Report report = new Report(rules);
+        for (long g = 0; g < games; g++) {
+            game.resetGame();
+            int pointsBefore = game.getEnchantmentPoints();
+            strategy.startGame(game);
+            report.pointsSpent += pointsBefore - game.getEnchantmentPoints();
+            int used = game.getEnchantmentFlags();
+            boolean won = play(game, strategy, used);
+            report.games++;
+            if (won) {
+                report.wins++;
+                report.pointsEarned += rules.getWinPoints();
+                report.winsByAttempts[Math.min(game.getAttempts(), report.winsByAttempts.length - 1)]++;
+            }
+            for (Enchantment enchantment : Enchantment.values()) {
+                if ((used & enchantment.getMask()) == 0) {
+                    continue;
+                }
+                report.gamesWith[enchantment.ordinal()]++;
+                if (g % REPLAY_INTERVAL != 0) {
+                    continue;
+                }
+                replay.withheld = enchantment;
+                replay.resetGame(game.getTargetNumber());
+                // What it cost stays unspent, so it cannot buy something else instead
+                replay.addEnchantmentPoints(pointsBefore - rules.getCost(enchantment) - replay.getEnchantmentPoints());
+                replayStrategy.startGame(replay);
+                int replayUsed = replay.getEnchantmentFlags();
+                boolean replayWon = play(replay, replayStrategy, replayUsed);
+                // A strategy may still choose differently once the enchantment is refused; such a replay is not a pair
+                if (replayUsed == (used & ~enchantment.getMask())) {
+                    report.pairedGames[enchantment.ordinal()]++;
+                    report.pairedExtraWins[enchantment.ordinal()] += (won ? 1 : 0) - (replayWon ? 1 : 0);
+                }
+            }
+        }
+        return report;
+    }
+
+    // Plays a game the strategy has started to the end; true if it was won. Flags are read before
+    // each hint, since reading the hint consumes Precision.
+    private static boolean play(NumberGuessingLogic game, Strategy strategy, int used) {
+        strategy.onHint(game.getHint(), -1, 0, used);
+        while (true) {
+            int guess = strategy.nextGuess(game);
+            GuessResult result = game.guess(guess);
+            if (result.isFinal()) {
+                return result == GuessResult.CORRECT;
+            }
+            strategy.onResult(guess, result);
+            int flags = game.getEnchantmentFlags();
+            strategy.onHint(game.getHint(), guess, game.getAttempts(), flags);
+        }
+    }
+
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        String[] names = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : STRATEGIES.keySet().toArray(new String[0]);
+        for (String name : names) {
+            Function<SplittableRandom, Strategy> strategy = STRATEGIES.get(name);
+            if (strategy == null) {
+                System.err.println("Unknown strategy: " + name + " (known: " + STRATEGIES.keySet() + ")");
+                continue;
+            }
+            long start = System.nanoTime();
+            Report report = simulate(strategy, games, seed);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("== %s: %,.0f games/s ==%n%s", name, games / seconds, report);
+        }
+    }
+}
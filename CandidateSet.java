@@ -0,0 +1,133 @@
+// The numbers a game's target can still be, given everything the player has been told so far.
+// An interval plus a bitset of the residues mod 30 that are still allowed, which covers every
+// parity and divisibility-by-3-or-5 hint in one int. Three ints per game and constant work per
+// update, whatever the size of the range, up to the full non-negative int range.
+final class CandidateSet {
+    static final int MODULUS = 30;
+    private static final int ALL_RESIDUES = (1 << MODULUS) - 1;
+    private static final int[] DIVISIBLE_BY = new int[MODULUS + 1]; // Residues mod 30 divisible by each of 2, 3 and 5
+
+    static {
+        for (int divisor : new int[] {2, 3, 5}) {
+            for (int r = 0; r < MODULUS; r += divisor) {
+                DIVISIBLE_BY[divisor] |= 1 << r;
+            }
+        }
+    }
+
+    private int low;
+    private int high;
+    private int residues;
+    // What the last hint was given for; asking again repeats it instead of revealing more
+    private int hintAttempts = -1;
+    private int hintFlags;
+
+    void reset(int minNumber, int maxNumber) {
+        low = minNumber;
+        high = maxNumber;
+        residues = ALL_RESIDUES;
+        hintAttempts = -1;
+    }
+
+    // Whether a hint was already given at this attempt count with these hint enchantments
+    boolean isHinted(int attempts, int flags) {
+        return attempts == hintAttempts && flags == hintFlags;
+    }
+
+    void markHinted(int attempts, int flags) {
+        hintAttempts = attempts;
+        hintFlags = flags;
+    }
+
+    int getResidues() {
+        return residues;
+    }
+
+    int getHintAttempts() {
+        return hintAttempts;
+    }
+
+    int getHintFlags() {
+        return hintFlags;
+    }
+
+    // Puts back a state read from getLow, getHigh, getResidues, getHintAttempts and getHintFlags
+    void restore(int low, int high, int residues, int hintAttempts, int hintFlags) {
+        this.low = low;
+        this.high = high;
+        this.residues = residues & ALL_RESIDUES;
+        this.hintAttempts = hintAttempts;
+        this.hintFlags = hintFlags;
+    }
+
+    // Smallest remaining candidate
+    int getLow() {
+        return low;
+    }
+
+    // Largest remaining candidate
+    int getHigh() {
+        return high;
+    }
+
+    boolean contains(int number) {
+        return number >= low && number <= high && (residues & (1 << (number % MODULUS))) != 0;
+    }
+
+    // Only numbers above the given one remain, e.g. after "Too low!" (so number is below the target)
+    void above(int number) {
+        if (number >= low) {
+            low = number + 1;
+            tighten();
+        }
+    }
+
+    // Only numbers below the given one remain, e.g. after "Too high!" (so number is above the target)
+    void below(int number) {
+        if (number <= high) {
+            high = number - 1;
+            tighten();
+        }
+    }
+
+    // Only numbers at most distance away from center remain
+    void within(int center, long distance) {
+        low = (int) Math.max(low, center - distance);
+        high = (int) Math.min(high, center + distance);
+        tighten();
+    }
+
+    // Keeps the numbers that are (or are not) divisible by 2, 3 or 5
+    void divisibleBy(int divisor, boolean divisible) {
+        int mask = DIVISIBLE_BY[divisor];
+        residues &= divisible ? mask : ~mask & ALL_RESIDUES;
+        tighten();
+    }
+
+    // How many candidates remain: one closed-form count per allowed residue
+    long count() {
+        if (low > high) {
+            return 0;
+        }
+        long total = 0;
+        for (int bits = residues; bits != 0; bits &= bits - 1) {
+            int r = Integer.numberOfTrailingZeros(bits);
+            total += Math.floorDiv((long) high - r, MODULUS) - Math.floorDiv((long) low - 1 - r, MODULUS);
+        }
+        return total;
+    }
+
+    // Moves both ends onto allowed residues, so getLow and getHigh are themselves candidates
+    private void tighten() {
+        if (residues == 0) {
+            low = high + 1;
+            return;
+        }
+        for (int i = 0; i < MODULUS && low <= high && (residues & (1 << (low % MODULUS))) == 0; i++) {
+            low++;
+        }
+        for (int i = 0; i < MODULUS && low <= high && (residues & (1 << (high % MODULUS))) == 0; i++) {
+            high--;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Parks games as one packed long each (see NumberGuessingLogic.toPackedState), so millions of
+// paused games cost 8 bytes apiece in a single primitive array instead of one object per game.
+// Games are addressed by slot and operated on through a reusable View. Not thread-safe: give
+// each thread its own store, or guard a shared one externally.
+public class CompactSessionStore {
+    private final long[] states;
+    private final int[] freeSlots; // Stack of released slots
+    private final BitSet allocated; // Slots handed out by allocate and not yet released
+    private int freeCount;
+    private int nextUnused;
+    private final NumberGuessingLogic scratch;
+    private final GameRules rules;
+    private final int winPoints;
+
+    public CompactSessionStore(int capacity) {
+        this(capacity, TargetSource.threadLocal());
+    }
+
+    public CompactSessionStore(int capacity, TargetSource targetSource) {
+        this(capacity, targetSource, GameRules.defaults());
+    }
+
+    // Rules whose range or attempts do not fit the packed layout are rejected up front
+    public CompactSessionStore(int capacity, TargetSource targetSource, GameRules rules) {
+        if (!rules.fitsPackedState()) {
+            throw new IllegalArgumentException("Rules do not fit the packed layout: numbers up to "
+                + NumberGuessingLogic.PACKED_MAX_GUESS + " and at most " + (NumberGuessingLogic.PACKED_MAX_MAX_ATTEMPTS - 1) + " attempts");
+        }
+        states = new long[capacity];
+        freeSlots = new int[capacity];
+        allocated = new BitSet(capacity);
+        scratch = new NumberGuessingLogic(targetSource, () -> rules);
+        this.rules = rules;
+        winPoints = rules.getWinPoints();
+        scratch.setPrecomputedHints(true);
+    }
+
+    public int getCapacity() {
+        return states.length;
+    }
+
+    public int getSize() {
+        return nextUnused - freeCount;
+    }
+
+    // Returns a slot holding a fresh game with no points, or -1 if the store is full
+    public int allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else if (nextUnused < states.length) {
+            slot = nextUnused++;
+        } else {
+            return -1;
+        }
+        scratch.fromPackedState(0L);
+        scratch.resetGame();
+        states[slot] = scratch.toPackedState();
+        allocated.set(slot);
+        return slot;
+    }
+
+    // Releasing a slot that is not allocated, e.g. a second time, throws IllegalArgumentException
+    public void release(int slot) {
+        checkSlot(slot);
+        allocated.clear(slot);
+        states[slot] = 0L;
+        freeSlots[freeCount++] = slot;
+    }
+
+    public void clear() {
+        Arrays.fill(states, 0L);
+        allocated.clear();
+        freeCount = 0;
+        nextUnused = 0;
+    }
+
+    // Applies each (slot, guess) pair from pairs, up to its limit, and puts one GuessResult code per
+    // pair into results. Works on the packed bits directly with no scratch game, so the loop is plain
+    // long arithmetic. Unallocated slots get NO_SESSION, guesses outside the rules' range
+    // OUT_OF_RANGE and guesses after the game was won or lost FINISHED, leaving the state alone.
+    // Returns the number of pairs applied.
+    public int checkGuesses(IntBuffer pairs, ByteBuffer results) {
+        int count = Math.min(pairs.remaining() / 2, results.remaining());
+        for (int i = 0; i < count; i++) {
+            int slot = pairs.get();
+            int guess = pairs.get();
+            results.put(checkPacked(slot, guess));
+        }
+        return count;
+    }
+
+    // Same as checkGuesses for parallel arrays
+    public void checkGuesses(int[] slots, int[] guesses, byte[] results, int count) {
+        for (int i = 0; i < count; i++) {
+            results[i] = checkPacked(slots[i], guesses[i]);
+        }
+    }
+
+    // NumberGuessingLogic.guess on a packed state (see toPackedState for the layout)
+    private byte checkPacked(int slot, int guess) {
+        if (!isAllocated(slot)) {
+            return GuessResult.NO_SESSION.getCode();
+        }
+        if (!rules.isInRange(guess)) {
+            return GuessResult.OUT_OF_RANGE.getCode(); // The rules fit the packed layout, so this covers it too
+        }
+        long state = states[slot];
+        if (isFinished(state)) {
+            return GuessResult.FINISHED.getCode(); // Another guess must not win the points again
+        }
+        int target = (int) (state >>> 32) & 0x3F;
+        int attempts = ((int) (state >>> 44) & 0x1F) + 1;
+        int maxAttempts = (int) (state >>> 49) & 0xF;
+        int points = (int) state + (guess == target ? winPoints : 0);
+        states[slot] = (state & ~0x1FFC0FFFFFFFFL) // Everything but points, lastGuess and attempts
+            | (points & 0xFFFFFFFFL)
+            | ((long) (guess + 1) << 38)
+            | ((long) Math.min(attempts, NumberGuessingLogic.PACKED_MAX_ATTEMPTS) << 44);
+        if (guess == target) {
+            return GuessResult.CORRECT.getCode();
+        } else if (attempts >= maxAttempts) {
+            return GuessResult.GAME_OVER.getCode();
+        }
+        return guess < target ? GuessResult.TOO_LOW.getCode() : GuessResult.TOO_HIGH.getCode();
+    }
+
+    // Won, or out of attempts; lastGuess is stored as guess + 1, with 0 for no guess yet
+    private static boolean isFinished(long state) {
+        int target = (int) (state >>> 32) & 0x3F;
+        int lastGuess = ((int) (state >>> 38) & 0x3F) - 1;
+        int attempts = (int) (state >>> 44) & 0x1F;
+        int maxAttempts = (int) (state >>> 49) & 0xF;
+        return lastGuess == target || attempts >= maxAttempts;
+    }
+
+    public View view() {
+        return new View();
+    }
+
+    private boolean isAllocated(int slot) {
+        return slot >= 0 && slot < nextUnused && allocated.get(slot);
+    }
+
+    private void checkSlot(int slot) {
+        if (!isAllocated(slot)) {
+            throw new IllegalArgumentException("Slot not allocated: " + slot);
+        }
+    }
+
+    // Flyweight over one slot with the same operations as NumberGuessingLogic. Reads decode the
+    // packed bits directly; mutations unpack into a shared scratch game, apply the real game
+    // logic and pack the result back.
+    public final class View {
+        private int slot = -1;
+
+        private View() {
+        }
+
+        public View moveTo(int slot) {
+            checkSlot(slot);
+            this.slot = slot;
+            return this;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        public int getEnchantmentPoints() {
+            return (int) states[slot];
+        }
+
+        public int getTargetNumber() {
+            return (int) (states[slot] >>> 32) & 0x3F;
+        }
+
+        public int getAttempts() {
+            return (int) (states[slot] >>> 44) & 0x1F;
+        }
+
+        public int getMaxAttempts() {
+            return (int) (states[slot] >>> 49) & 0xF;
+        }
+
+        public boolean isEnchantmentActive(Enchantment enchantment) {
+            return ((states[slot] >>> 53) & enchantment.getMask()) != 0;
+        }
+
+        public boolean isTimeWarpActive() {
+            return isEnchantmentActive(Enchantment.TIME_WARP);
+        }
+
+        // Parked games have no clock, so only a win or running out of attempts ends one
+        public boolean isFinished() {
+            return CompactSessionStore.isFinished(states[slot]);
+        }
+
+        public void resetGame() {
+            load().resetGame();
+            store();
+        }
+
+        public void addEnchantmentPoints(int points) {
+            load().addEnchantmentPoints(points);
+            store();
+        }
+
+        // Guesses outside the rules' range are rejected before any state changes, and a guess after
+        // the game was won or lost answers FINISHED without being counted, as in checkGuesses
+        public String checkGuess(int guess) {
+            if (!rules.isInRange(guess)) {
+                throw new IllegalArgumentException("Guess out of range: " + guess);
+            }
+            if (isFinished()) {
+                return GuessResult.FINISHED.getMessage();
+            }
+            String result = load().checkGuess(guess);
+            store();
+            return result;
+        }
+
+        public String getHint() {
+            String hint = load().getHint();
+            store();
+            return hint;
+        }
+
+        public boolean activateEnchantment(Enchantment enchantment) {
+            boolean activated = load().activateEnchantment(enchantment);
+            store();
+            return activated;
+        }
+
+        public boolean activateEnchantment(String enchantment) {
+            Enchantment typed = Enchantment.fromName(enchantment);
+            return typed != null && activateEnchantment(typed);
+        }
+
+        private NumberGuessingLogic load() {
+            scratch.fromPackedState(states[slot]);
+            return scratch;
+        }
+
+        private void store() {
+            states[slot] = scratch.toPackedState();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.HashMap;
+import java.util.Map;
+
+public enum Enchantment {
+    INSIGHT("Insight", 5), // Adds the range half to every hint
+    CLARITY("Clarity", 3), // Reveals even/odd on the first attempt
+    TIME_WARP("Time Warp", 8), // Extends the timer by 10 seconds
+    PRECISION("Precision", 4), // Next hint shows proximity
+    SECOND_CHANCE("Second Chance", 10); // Grants one extra attempt
+
+    private static final Map<String, Enchantment> BY_NAME = new HashMap<>();
+
+    static {
+        for (Enchantment enchantment : values()) {
+            BY_NAME.put(enchantment.displayName, enchantment);
+        }
+    }
+
+    private final String displayName;
+    private final int cost;
+    private final int mask; // Bit in the per-game enchantment state
+
+    Enchantment(String displayName, int cost) {
+        this.displayName = displayName;
+        this.cost = cost;
+        this.mask = 1 << ordinal();
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    // Maps the names used by the string API ("Insight", "Time Warp", ...) back to the enum; null if unknown
+    public static Enchantment fromName(String displayName) {
+        return BY_NAME.get(displayName);
+    }
+}
@@ -0,0 +1,22 @@
+// State transitions of a NumberGuessingLogic game, each carrying one int. Replaying the events of a
+// session in order through NumberGuessingLogic.apply rebuilds its state exactly.
+public enum GameEvent {
+    RESET, // New game; value is the target number
+    GUESS, // value is the guess
+    HINT, // A hint consumed Precision; value unused
+    ENCHANT, // value is the Enchantment ordinal
+    POINTS, // Points added from outside the game, e.g. a ledger balance; value is the delta
+    TIMEOUT, // The game ran out of time; value unused
+    END; // The session was closed; written by GameSessionManager, never by a game
+
+    private static final GameEvent[] VALUES = values();
+
+    public interface Listener {
+        void onEvent(GameEvent event, int value);
+    }
+
+    // Events are stored by ordinal; null for an unknown code
+    public static GameEvent fromCode(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+}
@@ -0,0 +1,362 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Append-only journal of GameEvents for any number of sessions. Appends go into a direct buffer that
+// is written to the current segment file in one call when it fills up, and a background thread writes
+// and forces whatever is pending every flushIntervalMillis (group commit). A snapshot stores the state
+// of every live session in GameStateCodec form, whatever its rules; the segment is rolled at that
+// point and segments wholly before the snapshot are deleted, so replay reads one snapshot plus the
+// events written since.
+//   directory/journal-<first record index>.log   16-byte event records
+//   directory/snapshot.bin                        latest snapshot, replaced atomically
+public class GameJournal implements Closeable {
+    // Record: session id (8 bytes), value (4 bytes), event code (2 bytes), checksum (2 bytes)
+    private static final int RECORD_SIZE = 16;
+    private static final int BATCH_RECORDS = 4096;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int SNAPSHOT_MAGIC = 0x474A5332;
+    // Snapshot entry: session id and journal position (varints), timed-out flag (1 byte), encoded state
+    private static final int MAX_SNAPSHOT_ENTRY_BYTES = 10 + 10 + 1 + GameStateCodec.MAX_STATE_BYTES;
+    private static final int SNAPSHOT_HEADER_SIZE = 16;
+
+    private final Path directory;
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_RECORDS * RECORD_SIZE);
+    private final ScheduledExecutorService flusher;
+    private FileChannel segment;
+    private long nextIndex; // Journal position: index of the next record to be appended
+    private boolean closed;
+
+    // Session states captured by GameSessionManager.writeSnapshot; replay starts at replayFrom
+    public static final class Snapshot {
+        final long replayFrom;
+        private ByteBuffer entries = ByteBuffer.allocate(64 * 1024);
+        private int count;
+
+        Snapshot(long replayFrom) {
+            this.replayFrom = replayFrom;
+        }
+
+        // position is the journal position read while holding the session's lock, so exactly the
+        // session's events from position on are newer than the game's state
+        public void add(long sessionId, NumberGuessingLogic game, long position, boolean timedOut) {
+            if (entries.remaining() < MAX_SNAPSHOT_ENTRY_BYTES) {
+                ByteBuffer larger = ByteBuffer.allocate(entries.capacity() * 2);
+                entries.flip();
+                entries = larger.put(entries);
+            }
+            GameStateCodec.putVarint(entries, sessionId);
+            GameStateCodec.putVarint(entries, position);
+            entries.put((byte) (timedOut ? 1 : 0));
+            GameStateCodec.encodeState(game, entries);
+            count++;
+        }
+
+        public int getSessionCount() {
+            return count;
+        }
+    }
+
+    public GameJournal(Path directory, long flushIntervalMillis) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        recover();
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "game-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::periodicFlush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void append(long sessionId, GameEvent event, int value) {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        if (!batch.hasRemaining()) {
+            writeBatch();
+        }
+        batch.putLong(sessionId);
+        batch.putInt(value);
+        batch.putShort((short) event.ordinal());
+        batch.putShort(checksum(sessionId, value, event.ordinal()));
+        nextIndex++;
+    }
+
+    public synchronized long position() {
+        return nextIndex;
+    }
+
+    // Event listener for NumberGuessingLogic.setEventListener that journals everything under sessionId
+    public GameEvent.Listener listenerFor(long sessionId) {
+        return (event, value) -> append(sessionId, event, value);
+    }
+
+    // Writes out pending events and forces them to disk. The fsync runs outside the lock so appends are not stalled.
+    public void flush() throws IOException {
+        FileChannel current;
+        synchronized (this) {
+            writeBatch();
+            current = segment;
+        }
+        try {
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // Rolled over meanwhile; rolling forces the old segment itself
+        }
+    }
+
+    public synchronized Snapshot newSnapshot() {
+        return new Snapshot(nextIndex);
+    }
+
+    // Replaces the snapshot, starts a new segment and drops the segments the snapshot has made redundant
+    public void writeSnapshot(Snapshot snapshot) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE + snapshot.entries.position() + 8);
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.putInt(snapshot.getSessionCount());
+        buffer.putLong(snapshot.replayFrom);
+        buffer.put(snapshot.entries.array(), 0, snapshot.entries.position());
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            rollSegment();
+            List<Long> firsts = segmentFirstIndexes();
+            for (int i = 0; i + 1 < firsts.size(); i++) {
+                if (firsts.get(i + 1) <= snapshot.replayFrom) {
+                    Files.delete(segmentPath(firsts.get(i)));
+                }
+            }
+        }
+    }
+
+    // Rebuilds every session that is still open from the snapshot and the events after it. The games have
+    // no listeners attached and their clocks are stopped; a game that had timed out is still timed out.
+    public Map<Long, NumberGuessingLogic> replay() throws IOException {
+        return replay(GameRules::defaults);
+    }
+
+    // Rebuilt games take their rules from rulesSource, which must match the rules the sessions were started with
+    public Map<Long, NumberGuessingLogic> replay(Supplier<GameRules> rulesSource) throws IOException {
+        flush();
+        ByteBuffer snapshot = readSnapshot();
+        int count = snapshot == null ? 0 : snapshot.getInt(4);
+        long replayFrom = snapshot == null ? 0 : snapshot.getLong(8);
+        Map<Long, NumberGuessingLogic> games = new HashMap<>(Math.max(16, count * 2));
+        Map<Long, Long> newerFrom = new HashMap<>(Math.max(16, count * 2)); // Where each snapshotted session's newer events start
+        if (snapshot != null) {
+            ByteBuffer entries = snapshot.duplicate().position(SNAPSHOT_HEADER_SIZE).limit(snapshot.capacity() - 8);
+            for (int i = 0; i < count; i++) {
+                long sessionId = GameStateCodec.getVarint(entries);
+                long position = GameStateCodec.getVarint(entries);
+                boolean timedOut = entries.get() != 0;
+                NumberGuessingLogic game = new NumberGuessingLogic(TargetSource.threadLocal(), rulesSource);
+                try {
+                    GameStateCodec.decodeState(entries, game);
+                } catch (IllegalArgumentException e) {
+                    // The CRC matched, so the snapshot was written under other rules
+                    throw new IOException("Journal snapshot does not fit the current rules: " + e.getMessage(), e);
+                }
+                if (timedOut) {
+                    game.timeOut();
+                }
+                games.put(sessionId, game);
+                newerFrom.put(sessionId, position);
+            }
+        }
+        List<Long> firsts;
+        synchronized (this) {
+            firsts = segmentFirstIndexes();
+        }
+        for (int s = 0; s < firsts.size(); s++) {
+            long first = firsts.get(s);
+            if (s + 1 < firsts.size() && firsts.get(s + 1) <= replayFrom) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segmentPath(first), StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int records = (int) (channel.size() / RECORD_SIZE);
+                for (int r = (int) Math.max(0, replayFrom - first); r < records; r++) {
+                    int offset = r * RECORD_SIZE;
+                    long sessionId = mapped.getLong(offset);
+                    int value = mapped.getInt(offset + 8);
+                    int code = mapped.getShort(offset + 12);
+                    if (mapped.getShort(offset + 14) != checksum(sessionId, value, code)) {
+                        break; // Torn tail
+                    }
+                    Long snapshotPosition = newerFrom.get(sessionId);
+                    if (snapshotPosition != null && first + r < snapshotPosition) {
+                        continue; // Already part of the snapshot
+                    }
+                    GameEvent event = GameEvent.fromCode(code);
+                    if (event == GameEvent.END) {
+                        games.remove(sessionId);
+                    } else if (event != null) {
+                        NumberGuessingLogic game = games.get(sessionId);
+                        if (game == null) {
+                            game = new NumberGuessingLogic(TargetSource.threadLocal(), rulesSource);
+                            games.put(sessionId, game);
+                        }
+                        game.apply(event, value);
+                    }
+                }
+            }
+        }
+        return games;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            writeBatch();
+            segment.force(false);
+            segment.close();
+            closed = true;
+        }
+    }
+
+    private void periodicFlush() {
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+            }
+            flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Game journal flush failed: " + e.getMessage());
+        }
+    }
+
+    // Opens the newest segment for appending, cutting off a record torn by a crash
+    private void recover() throws IOException {
+        ByteBuffer snapshot = readSnapshot();
+        nextIndex = snapshot == null ? 0 : snapshot.getLong(8);
+        List<Long> firsts = segmentFirstIndexes();
+        if (firsts.isEmpty()) {
+            segment = openSegment(nextIndex);
+            return;
+        }
+        long first = firsts.get(firsts.size() - 1);
+        segment = openSegment(first);
+        long valid = 0;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        while (true) {
+            record.clear();
+            while (record.hasRemaining() && segment.read(record, valid * RECORD_SIZE + record.position()) > 0) {
+                // Keep reading until the record is complete or the file ends
+            }
+            if (record.hasRemaining()
+                    || record.getShort(14) != checksum(record.getLong(0), record.getInt(8), record.getShort(12))) {
+                break;
+            }
+            valid++;
+        }
+        segment.truncate(valid * RECORD_SIZE);
+        segment.position(valid * RECORD_SIZE);
+        nextIndex = Math.max(nextIndex, first + valid);
+    }
+
+    private void writeBatch() {
+        batch.flip();
+        try {
+            while (batch.hasRemaining()) {
+                segment.write(batch);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        writeBatch();
+        segment.force(false);
+        segment.close();
+        segment = openSegment(nextIndex);
+    }
+
+    private FileChannel openSegment(long first) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(first), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private Path segmentPath(long first) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, first, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> segmentFirstIndexes() throws IOException {
+        List<Long> firsts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                firsts.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        firsts.sort(null);
+        return firsts;
+    }
+
+    // The whole snapshot, or null if there is none; a snapshot that fails its CRC is an error since it is never written in place
+    private ByteBuffer readSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, Math.max(0, buffer.capacity() - 8));
+        if (buffer.capacity() < SNAPSHOT_HEADER_SIZE + 8 || buffer.getInt(0) != SNAPSHOT_MAGIC
+                || buffer.getLong(buffer.capacity() - 8) != crc.getValue()) {
+            throw new IOException("Corrupt journal snapshot " + file);
+        }
+        return buffer;
+    }
+
+    // Never zero for an all-zero record, so preallocated or zero-filled space is not mistaken for a record
+    private static short checksum(long sessionId, int value, int code) {
+        long h = sessionId * 0x9E3779B97F4A7C15L + ((long) value << 16) + code;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        return (short) (h ^ (h >>> 16) ^ 0x5BD1);
+    }
+}
@@ -0,0 +1,272 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Process-wide game metrics. Counters are LongAdders, so concurrent increments land in separate cells
+// instead of fighting over one; latencies and frame times go into LatencyHistograms owned by the
+// recording thread and are only merged when read. Nothing on the recording path takes a lock.
+// A System.nanoTime() pair costs more than the whole budget on some clocks, so operation latency is
+// sampled on one call in SAMPLE_INTERVAL per thread while every call is still counted.
+// The shared instance is registered with the platform MBean server as GuessTheNumber:type=GameMetrics,
+// on a background thread: starting the MBean server takes a few hundred milliseconds, which would
+// otherwise land on whichever thread first touches the metrics, often the EDT during startup.
+public class GameMetrics implements GameMetricsMBean {
+    public enum Operation {
+        CHECK_GUESS("checkGuess"),
+        GET_HINT("getHint"),
+        ACTIVATE_ENCHANTMENT("activateEnchantment"),
+        RESET_GAME("resetGame");
+
+        private final String displayName;
+
+        Operation(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    public enum Outcome {
+        WIN, LOSS, TIMEOUT
+    }
+
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+    private static final int SAMPLE_INTERVAL = 16;
+    private static final GameMetrics SHARED = new GameMetrics();
+
+    static {
+        Thread registrar = new Thread(GameMetrics::registerShared, "game-metrics-jmx");
+        registrar.setDaemon(true);
+        registrar.start();
+    }
+
+    private final LongAdder[] operationCounts = newAdders(Operation.values().length);
+    private final LongAdder[] enchantmentUses = newAdders(Enchantment.values().length);
+    private final LongAdder[] outcomes = newAdders(Outcome.values().length);
+    private final LongAdder frames = new LongAdder();
+    private volatile long startupMillis = -1;
+    // Every thread that ever recorded keeps its recorder here; threads are expected to be long-lived pool threads
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(this::newRecorder);
+
+    private static final class Recorder {
+        final LatencyHistogram[] operations = new LatencyHistogram[Operation.values().length];
+        final LatencyHistogram frames = new LatencyHistogram();
+        int untilSample;
+
+        Recorder() {
+            for (int i = 0; i < operations.length; i++) {
+                operations[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    public static GameMetrics shared() {
+        return SHARED;
+    }
+
+    // Start of an operation: a nanoTime stamp for sampled calls, NOT_SAMPLED otherwise
+    public long start() {
+        Recorder r = recorder.get();
+        if (--r.untilSample > 0) {
+            return NOT_SAMPLED;
+        }
+        r.untilSample = SAMPLE_INTERVAL;
+        return System.nanoTime();
+    }
+
+    public void record(Operation operation, long start) {
+        operationCounts[operation.ordinal()].increment();
+        if (start != NOT_SAMPLED) {
+            recorder.get().operations[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    // A batch of count operations timed as one; a sampled batch records its average per operation
+    public void record(Operation operation, long start, int count) {
+        operationCounts[operation.ordinal()].add(count);
+        if (start != NOT_SAMPLED && count > 0) {
+            recorder.get().operations[operation.ordinal()].record((System.nanoTime() - start) / count);
+        }
+    }
+
+    public void recordEnchantment(Enchantment enchantment) {
+        enchantmentUses[enchantment.ordinal()].increment();
+    }
+
+    public void recordOutcome(Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    public void recordOutcomes(Outcome outcome, int count) {
+        if (count > 0) {
+            outcomes[outcome.ordinal()].add(count);
+        }
+    }
+
+    public void recordFrame(long nanos) {
+        frames.increment();
+        recorder.get().frames.record(nanos);
+    }
+
+    // Time from JVM start to the first frame on screen
+    public void recordStartup(long millis) {
+        startupMillis = millis;
+    }
+
+    public long getCount(Operation operation) {
+        return operationCounts[operation.ordinal()].sum();
+    }
+
+    public long getEnchantmentUses(Enchantment enchantment) {
+        return enchantmentUses[enchantment.ordinal()].sum();
+    }
+
+    public long getOutcomes(Outcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    // Merged copy of the sampled latencies in nanoseconds. Reads race with the recording threads, so
+    // the result can be a few samples behind; that is fine for monitoring.
+    public LatencyHistogram latency(Operation operation) {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Recorder r : recorders) {
+            merged.add(r.operations[operation.ordinal()]);
+        }
+        return merged;
+    }
+
+    public LatencyHistogram frameTimes() {
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Recorder r : recorders) {
+            merged.add(r.frames);
+        }
+        return merged;
+    }
+
+    @Override
+    public long getCheckGuessCount() {
+        return getCount(Operation.CHECK_GUESS);
+    }
+
+    @Override
+    public long getHintCount() {
+        return getCount(Operation.GET_HINT);
+    }
+
+    @Override
+    public long getEnchantmentActivationCount() {
+        return getCount(Operation.ACTIVATE_ENCHANTMENT);
+    }
+
+    @Override
+    public long getResetCount() {
+        return getCount(Operation.RESET_GAME);
+    }
+
+    @Override
+    public double getCheckGuessP99Micros() {
+        return latency(Operation.CHECK_GUESS).valueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getHintP99Micros() {
+        return latency(Operation.GET_HINT).valueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getEnchantmentActivationP99Micros() {
+        return latency(Operation.ACTIVATE_ENCHANTMENT).valueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getResetP99Micros() {
+        return latency(Operation.RESET_GAME).valueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public long getWins() {
+        return getOutcomes(Outcome.WIN);
+    }
+
+    @Override
+    public long getLosses() {
+        return getOutcomes(Outcome.LOSS);
+    }
+
+    @Override
+    public long getTimeouts() {
+        return getOutcomes(Outcome.TIMEOUT);
+    }
+
+    // Share of finished games that were won
+    @Override
+    public double getWinRate() {
+        long wins = getWins();
+        long finished = wins + getLosses() + getTimeouts();
+        return finished == 0 ? 0 : (double) wins / finished;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frames.sum();
+    }
+
+    @Override
+    public double getFrameP99Millis() {
+        return frameTimes().valueAtPercentile(99) / 1e6;
+    }
+
+    // -1 until a GUI has recorded its first frame
+    @Override
+    public long getStartupMillis() {
+        return startupMillis;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Operation operation : Operation.values()) {
+            out.append(String.format("%-20s calls %,d  latency (1 in %d sampled): %s%n", operation.getDisplayName(),
+                getCount(operation), SAMPLE_INTERVAL, latency(operation).summary(1_000, "us")));
+        }
+        out.append("enchantments:");
+        for (Enchantment enchantment : Enchantment.values()) {
+            out.append(String.format("  %s %,d", enchantment.getDisplayName(), getEnchantmentUses(enchantment)));
+        }
+        out.append(String.format("%ngames: wins %,d  losses %,d  timeouts %,d  win rate %.3f%n",
+            getWins(), getLosses(), getTimeouts(), getWinRate()));
+        out.append(String.format("frames: %s%n", frameTimes().summary(1_000_000, "ms")));
+        if (startupMillis >= 0) {
+            out.append(String.format("startup: first frame %,d ms after JVM start%n", startupMillis));
+        }
+        return out.toString();
+    }
+
+    private static void registerShared() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(SHARED, new ObjectName("GuessTheNumber:type=GameMetrics"));
+        } catch (JMException e) {
+            System.err.println("Game metrics not registered with JMX: " + e.getMessage());
+        }
+    }
+
+    private Recorder newRecorder() {
+        Recorder r = new Recorder();
+        recorders.add(r);
+        return r;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
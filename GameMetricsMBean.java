@@ -0,0 +1,34 @@
+// JMX view of GameMetrics; latencies come from the sampled histograms
+public interface GameMetricsMBean {
+    long getCheckGuessCount();
+
+    long getHintCount();
+
+    long getEnchantmentActivationCount();
+
+    long getResetCount();
+
+    double getCheckGuessP99Micros();
+
+    double getHintP99Micros();
+
+    double getEnchantmentActivationP99Micros();
+
+    double getResetP99Micros();
+
+    long getWins();
+
+    long getLosses();
+
+    long getTimeouts();
+
+    double getWinRate();
+
+    long getFrameCount();
+
+    double getFrameP99Millis();
+
+    long getStartupMillis();
+
+    String dump();
+}
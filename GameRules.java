@@ -0,0 +1,440 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+// Immutable set of game parameters. Everything a hint can say apart from the guess itself is
+// formatted once here, so building a hint is a handful of comparisons for any range size; ranges of
+// up to HintTable.MAX_NUMBERS numbers additionally get a full precomputed table. A running game keeps
+// the rules it was reset with, so swapping in new rules never affects a game in progress.
+// Loaded from a properties file; every key is optional and defaults to the original game:
+//   range.min=0  range.max=50  attempts.max=5  points.win=5
+//   time.baseSeconds=30  time.timeWarpSeconds=10
+//   cost.insight=5  cost.clarity=3  cost.time_warp=8  cost.precision=4  cost.second_chance=10
+//   hint.earlyAttempts=2  hint.midAttempts=4  (last attempt of the early and mid hint phases)
+//   hint.earlyClose=5  hint.earlyNear=10  hint.midClose=3  hint.finalClose=2  (distance thresholds)
+//   hint.candidates=false  (true by default for ranges over HintTable.MAX_NUMBERS numbers)
+// With hint.candidates each game tracks the numbers still possible (see CandidateSet) and every hint
+// reports what is left, instead of the fixed distance and decade hints of the original game.
+public final class GameRules {
+    private static final int FINAL_BUCKETS = 5;
+    private static final GameRules DEFAULTS = fromProperties(new Properties());
+
+    private final int minNumber;
+    private final int maxNumber;
+    private final int maxAttempts;
+    private final int winPoints;
+    private final int baseTimeSeconds;
+    private final int timeWarpSeconds;
+    private final int[] costs = new int[Enchantment.values().length];
+    private final int earlyAttempts;
+    private final int midAttempts;
+    private final int earlyClose;
+    private final int earlyNear;
+    private final int midClose;
+    private final int finalClose;
+    private final boolean candidateHints;
+    private final int half; // First number of the upper half
+
+    // Precomputed hint text
+    private final String startEven;
+    private final String startOdd;
+    private final String startEvenInsightLower;
+    private final String startEvenInsightUpper;
+    private final String startOddInsightLower;
+    private final String startOddInsightUpper;
+    private final String insightLower;
+    private final String insightUpper;
+    private final String earlyPrecisionClose;
+    private final String earlyPrecisionNear;
+    private final String earlyCloseHint;
+    private final String earlyNearHint;
+    private final String lowerHalf;
+    private final String upperHalf;
+    private final String midPrecisionClose;
+    private final String midCloseHint;
+    private final String finalPrecisionClose;
+    private final String finalCloseHint;
+    private final int[] finalThresholds = new int[FINAL_BUCKETS]; // Lowest number of each final-hint bucket
+    private final String[] finalBucketHints = new String[FINAL_BUCKETS];
+
+    private final HintTable hintTable; // null for ranges too large to tabulate
+
+    private GameRules(Properties properties) {
+        minNumber = intProperty(properties, "range.min", 0);
+        maxNumber = intProperty(properties, "range.max", 50);
+        maxAttempts = intProperty(properties, "attempts.max", 5);
+        winPoints = intProperty(properties, "points.win", 5);
+        baseTimeSeconds = intProperty(properties, "time.baseSeconds", 30);
+        timeWarpSeconds = intProperty(properties, "time.timeWarpSeconds", 10);
+        for (Enchantment enchantment : Enchantment.values()) {
+            costs[enchantment.ordinal()] = intProperty(properties, "cost." + enchantment.name().toLowerCase(), enchantment.getCost());
+        }
+        earlyAttempts = intProperty(properties, "hint.earlyAttempts", 2);
+        midAttempts = intProperty(properties, "hint.midAttempts", 4);
+        earlyClose = intProperty(properties, "hint.earlyClose", 5);
+        earlyNear = intProperty(properties, "hint.earlyNear", 10);
+        midClose = intProperty(properties, "hint.midClose", 3);
+        finalClose = intProperty(properties, "hint.finalClose", 2);
+        candidateHints = Boolean.parseBoolean(properties.getProperty("hint.candidates",
+            Boolean.toString((long) maxNumber - minNumber + 1 > HintTable.MAX_NUMBERS)).trim());
+        validate();
+
+        half = minNumber + (int) (((long) maxNumber - minNumber + 1) / 2);
+        startEven = "Starting Hint: The number is even.";
+        startOdd = "Starting Hint: The number is odd.";
+        insightLower = "Insight: The number is between " + minNumber + " and " + (half - 1) + ".";
+        insightUpper = "Insight: The number is between " + half + " and " + maxNumber + ".";
+        startEvenInsightLower = startEven + " " + insightLower;
+        startEvenInsightUpper = startEven + " " + insightUpper;
+        startOddInsightLower = startOdd + " " + insightLower;
+        startOddInsightUpper = startOdd + " " + insightUpper;
+        earlyPrecisionClose = "Precision: You're within " + earlyClose + " of the number!";
+        earlyPrecisionNear = "Precision: You're within " + earlyNear + " of the number!";
+        earlyCloseHint = "Hint: You're very close! Within " + earlyClose + " of the number.";
+        earlyNearHint = "Hint: You're close! Within " + earlyNear + " of the number.";
+        lowerHalf = "Hint: The number is in the lower half (" + minNumber + "-" + (half - 1) + ").";
+        upperHalf = "Hint: The number is in the upper half (" + half + "-" + maxNumber + ").";
+        midPrecisionClose = "Precision: You're within " + midClose + " of the number!";
+        midCloseHint = "Hint: You're extremely close! Within " + midClose + " of the number.";
+        finalPrecisionClose = "Precision: You're within " + finalClose + " of the number!";
+        finalCloseHint = "Final Hint: You're within " + finalClose + " of the number!";
+        for (int k = 0; k < FINAL_BUCKETS; k++) {
+            finalThresholds[k] = minNumber + (int) ((long) k * (maxNumber - minNumber) / FINAL_BUCKETS);
+        }
+        for (int k = 0; k < FINAL_BUCKETS; k++) {
+            int low = finalThresholds[k];
+            if (k == FINAL_BUCKETS - 1) {
+                finalBucketHints[k] = "Final Hint: The number is " + low + " or higher.";
+            } else if (low == 0 && finalThresholds[k + 1] == 10) {
+                finalBucketHints[k] = "Final Hint: The number is a single-digit number.";
+            } else {
+                finalBucketHints[k] = "Final Hint: The number is between " + low + " and " + (finalThresholds[k + 1] - 1) + ".";
+            }
+        }
+        hintTable = !candidateHints && getRangeSize() <= HintTable.MAX_NUMBERS ? new HintTable(this) : null;
+    }
+
+    // The original game: 0-50, five attempts, 30 seconds
+    public static GameRules defaults() {
+        return DEFAULTS;
+    }
+
+    // Throws IllegalArgumentException for a value that is not a number or rules that do not make sense
+    public static GameRules fromProperties(Properties properties) {
+        return new GameRules(properties);
+    }
+
+    public static GameRules load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    public int getMinNumber() {
+        return minNumber;
+    }
+
+    public int getMaxNumber() {
+        return maxNumber;
+    }
+
+    public int getRangeSize() {
+        return maxNumber - minNumber + 1;
+    }
+
+    public boolean isInRange(int number) {
+        return number >= minNumber && number <= maxNumber;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getWinPoints() {
+        return winPoints;
+    }
+
+    public int getBaseTimeSeconds() {
+        return baseTimeSeconds;
+    }
+
+    public int getTimeWarpSeconds() {
+        return timeWarpSeconds;
+    }
+
+    public int getCost(Enchantment enchantment) {
+        return costs[enchantment.ordinal()];
+    }
+
+    int getEarlyAttempts() {
+        return earlyAttempts;
+    }
+
+    int getMidAttempts() {
+        return midAttempts;
+    }
+
+    // Whether hints come from each game's CandidateSet rather than buildHint
+    public boolean isCandidateHints() {
+        return candidateHints;
+    }
+
+    // Whether games under these rules fit NumberGuessingLogic's packed layout, Second Chance included;
+    // the layout has no room for a CandidateSet
+    boolean fitsPackedState() {
+        return !candidateHints && maxNumber <= NumberGuessingLogic.PACKED_MAX_GUESS && maxAttempts + 1 <= NumberGuessingLogic.PACKED_MAX_MAX_ATTEMPTS;
+    }
+
+    // The precomputed table for this range, or null if the range is too large to tabulate
+    HintTable getHintTable() {
+        return hintTable;
+    }
+
+    // The hint rules themselves, free of side effects so HintTable can precompute them
+    String buildHint(int targetNumber, int lastGuess, int attempts, int enchantmentFlags) {
+        return render(describeHint(new Hint(), targetNumber, lastGuess, attempts, enchantmentFlags));
+    }
+
+    // Fills hint with what buildHint would say, without building any text
+    Hint describeHint(Hint hint, int targetNumber, int lastGuess, int attempts, int enchantmentFlags) {
+        boolean insightActive = (enchantmentFlags & Enchantment.INSIGHT.getMask()) != 0;
+        boolean precisionActive = (enchantmentFlags & Enchantment.PRECISION.getMask()) != 0;
+        boolean clarityUsed = (enchantmentFlags & Enchantment.CLARITY.getMask()) != 0;
+        boolean even = targetNumber % 2 == 0;
+        boolean lower = targetNumber < half;
+        int halfLow = lower ? minNumber : half;
+        int halfHigh = lower ? half - 1 : maxNumber;
+
+        // Provide a basic hint before the first attempt
+        if (attempts == 0) {
+            if (insightActive) {
+                return hint.set(this, Hint.Type.START_INSIGHT, even, 0, halfLow, halfHigh);
+            }
+            return hint.set(this, Hint.Type.START, even, 0, 0, 0);
+        }
+
+        // Handle Clarity enchantment (triggered, overrides other hints if active)
+        if (clarityUsed && attempts == 1) {
+            return hint.set(this, Hint.Type.CLARITY, even, 0, 0, 0);
+        }
+
+        // Calculate difference between guess and target
+        long difference = Math.abs((long) targetNumber - lastGuess);
+
+        // Early attempts: general range or property-based hints
+        if (attempts <= earlyAttempts) {
+            if (precisionActive) {
+                return hint.set(this, Hint.Type.PRECISION, false, difference <= earlyClose ? earlyClose : earlyNear, 0, 0);
+            } else if (difference <= earlyClose) {
+                return hint.set(this, Hint.Type.VERY_CLOSE, false, earlyClose, 0, 0);
+            } else if (difference <= earlyNear) {
+                return hint.set(this, Hint.Type.CLOSE, false, earlyNear, 0, 0);
+            } else if (insightActive) {
+                return hint.set(this, Hint.Type.INSIGHT, false, 0, halfLow, halfHigh);
+            } else {
+                return hint.set(this, Hint.Type.HALF, lower, 0, halfLow, halfHigh);
+            }
+        }
+        // Mid attempts: more specific hints
+        else if (attempts <= midAttempts) {
+            if (precisionActive) {
+                return hint.set(this, Hint.Type.PRECISION, false, difference <= midClose ? midClose : earlyClose, 0, 0);
+            } else if (difference <= midClose) {
+                return hint.set(this, Hint.Type.EXTREMELY_CLOSE, false, midClose, 0, 0);
+            } else if (targetNumber % 5 == 0) {
+                return hint.set(this, Hint.Type.MULTIPLE, true, 5, 0, 0);
+            } else if (targetNumber % 10 == 0) {
+                return hint.set(this, Hint.Type.MULTIPLE, true, 10, 0, 0);
+            } else {
+                return hint.set(this, Hint.Type.DIRECTION, lastGuess < targetNumber, lastGuess, 0, 0);
+            }
+        }
+        // Final attempts: very specific hint
+        else {
+            if (precisionActive) {
+                return hint.set(this, Hint.Type.PRECISION, false, difference <= finalClose ? finalClose : earlyClose, 0, 0);
+            } else if (difference <= finalClose) {
+                return hint.set(this, Hint.Type.FINAL_CLOSE, false, finalClose, 0, 0);
+            } else if (targetNumber % 3 == 0) {
+                return hint.set(this, Hint.Type.DIVISIBLE, true, 3, 0, 0);
+            }
+            int k = FINAL_BUCKETS - 1;
+            while (k > 0 && targetNumber < finalThresholds[k]) {
+                k--;
+            }
+            int high = k == FINAL_BUCKETS - 1 ? Integer.MAX_VALUE : finalThresholds[k + 1] - 1;
+            return hint.set(this, Hint.Type.BUCKET, false, k, finalThresholds[k], high);
+        }
+    }
+
+    // Candidate-tracking hints. Whatever the hint reveals is taken out of candidates first, so the
+    // closing count and range are exact. Precision reports the distance to the next power of ten.
+    Hint describeCandidateHint(Hint hint, CandidateSet candidates, int targetNumber, int lastGuess, int attempts, int enchantmentFlags) {
+        boolean insightActive = (enchantmentFlags & Enchantment.INSIGHT.getMask()) != 0;
+        boolean precisionActive = (enchantmentFlags & Enchantment.PRECISION.getMask()) != 0;
+        boolean clarityUsed = (enchantmentFlags & Enchantment.CLARITY.getMask()) != 0;
+        boolean even = targetNumber % 2 == 0;
+        if (attempts == 0) {
+            candidates.divisibleBy(2, even);
+            if (insightActive) {
+                halve(candidates, targetNumber);
+                hint.set(this, Hint.Type.START_INSIGHT, even, 0, candidates.getLow(), candidates.getHigh());
+            } else {
+                hint.set(this, Hint.Type.START, even, 0, 0, 0);
+            }
+        } else if (clarityUsed && attempts == 1) {
+            candidates.divisibleBy(2, even);
+            hint.set(this, Hint.Type.CLARITY, even, 0, 0, 0);
+        } else if (precisionActive) {
+            long difference = Math.abs((long) targetNumber - lastGuess);
+            long distance = 1;
+            while (distance < difference) {
+                distance *= 10;
+            }
+            candidates.within(lastGuess, distance);
+            hint.set(this, Hint.Type.PRECISION, false, (int) Math.min(distance, Integer.MAX_VALUE), 0, 0);
+        } else if (attempts <= earlyAttempts) {
+            if (insightActive) {
+                halve(candidates, targetNumber);
+                hint.set(this, Hint.Type.INSIGHT, false, 0, candidates.getLow(), candidates.getHigh());
+            } else {
+                hint.set(this, Hint.Type.NONE, false, 0, 0, 0);
+            }
+        } else if (attempts <= midAttempts) {
+            boolean multiple = targetNumber % 5 == 0;
+            candidates.divisibleBy(5, multiple);
+            hint.set(this, Hint.Type.MULTIPLE, multiple, 5, 0, 0);
+        } else {
+            boolean divisible = targetNumber % 3 == 0;
+            candidates.divisibleBy(3, divisible);
+            hint.set(this, Hint.Type.DIVISIBLE, divisible, 3, 0, 0);
+        }
+        hint.setCandidates(candidates.count(), candidates.getLow(), candidates.getHigh());
+        return hint;
+    }
+
+    // Insight: keeps the half of the remaining interval that holds the number
+    private static void halve(CandidateSet candidates, int targetNumber) {
+        int middle = candidates.getLow() + (candidates.getHigh() - candidates.getLow()) / 2;
+        if (targetNumber <= middle) {
+            candidates.below(middle + 1);
+        } else {
+            candidates.above(middle);
+        }
+    }
+
+    // The English text of a hint; every sentence these rules can produce without a guess or
+    // candidate count in it is one of the strings formatted when the rules were built
+    String render(Hint hint) {
+        String text = renderReveal(hint);
+        if (!hint.hasCandidates()) {
+            return text;
+        }
+        String left = "Hint: " + hint.getCandidatesLeft() + " candidates left, from " + hint.getCandidatesLow() + " to " + hint.getCandidatesHigh() + ".";
+        return text == null ? left : text + " " + left;
+    }
+
+    private String renderReveal(Hint hint) {
+        boolean positive = hint.isPositive();
+        int value = hint.getValue();
+        switch (hint.getType()) {
+            case START:
+                return positive ? startEven : startOdd;
+            case START_INSIGHT:
+                if (isLowerHalf(hint)) {
+                    return positive ? startEvenInsightLower : startOddInsightLower;
+                } else if (isUpperHalf(hint)) {
+                    return positive ? startEvenInsightUpper : startOddInsightUpper;
+                }
+                return (positive ? startEven : startOdd) + " Insight: The number is between " + hint.getLow() + " and " + hint.getHigh() + ".";
+            case CLARITY:
+                return positive ? "Clarity: The number is even." : "Clarity: The number is odd.";
+            case PRECISION:
+                if (value == earlyClose) {
+                    return earlyPrecisionClose;
+                } else if (value == earlyNear) {
+                    return earlyPrecisionNear;
+                } else if (value == midClose) {
+                    return midPrecisionClose;
+                } else if (value == finalClose) {
+                    return finalPrecisionClose;
+                }
+                return "Precision: You're within " + value + " of the number!";
+            case VERY_CLOSE:
+                return earlyCloseHint;
+            case CLOSE:
+                return earlyNearHint;
+            case EXTREMELY_CLOSE:
+                return midCloseHint;
+            case FINAL_CLOSE:
+                return finalCloseHint;
+            case INSIGHT:
+                if (isLowerHalf(hint)) {
+                    return insightLower;
+                } else if (isUpperHalf(hint)) {
+                    return insightUpper;
+                }
+                return "Insight: The number is between " + hint.getLow() + " and " + hint.getHigh() + ".";
+            case HALF:
+                return positive ? lowerHalf : upperHalf;
+            case MULTIPLE:
+                if (value == 10) {
+                    return "Hint: The number is a multiple of 10.";
+                }
+                return positive ? "Hint: The number is a multiple of 5." : "Hint: The number is not a multiple of 5.";
+            case DIRECTION:
+                return (positive ? "Hint: Try a number higher than " : "Hint: Try a number lower than ") + value + ".";
+            case DIVISIBLE:
+                return positive ? "Final Hint: The number is divisible by 3." : "Final Hint: The number is not divisible by 3.";
+            case BUCKET:
+                return finalBucketHints[value];
+            default:
+                return null;
+        }
+    }
+
+    private boolean isLowerHalf(Hint hint) {
+        return hint.getLow() == minNumber && hint.getHigh() == half - 1;
+    }
+
+    private boolean isUpperHalf(Hint hint) {
+        return hint.getLow() == half && hint.getHigh() == maxNumber;
+    }
+
+    private void validate() {
+        if (minNumber < 0 || maxNumber <= minNumber || maxNumber == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("range must satisfy 0 <= range.min < range.max < " + Integer.MAX_VALUE);
+        }
+        if (maxAttempts < 1 || winPoints < 0 || baseTimeSeconds < 1 || timeWarpSeconds < 0) {
+            throw new IllegalArgumentException("attempts.max and time.baseSeconds must be positive, points and extra time not negative");
+        }
+        for (int cost : costs) {
+            if (cost < 0) {
+                throw new IllegalArgumentException("enchantment costs must not be negative");
+            }
+        }
+        if (earlyAttempts < 1 || midAttempts < earlyAttempts) {
+            throw new IllegalArgumentException("hint phases must satisfy 1 <= hint.earlyAttempts <= hint.midAttempts");
+        }
+        if (earlyClose < 0 || earlyNear < earlyClose || midClose < 0 || finalClose < 0) {
+            throw new IllegalArgumentException("hint distances must not be negative and hint.earlyNear must be at least hint.earlyClose");
+        }
+    }
+
+    private static int intProperty(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a whole number for " + key + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// GameRules backed by a properties file that is re-read when it changes. get() is a single volatile
+// read, so games pick up new rules at their next reset with no locking, and games in progress keep
+// the rules they started with. A file that fails to load is reported and the previous rules stay.
+public class GameRulesFile implements Supplier<GameRules>, Closeable {
+    private final Path file;
+    private volatile GameRules current;
+    private FileTime loadedModified;
+    private ScheduledExecutorService watcher;
+
+    // Fails if the initial load fails
+    public GameRulesFile(Path file) throws IOException {
+        this.file = file;
+        loadedModified = Files.getLastModifiedTime(file);
+        current = GameRules.load(file);
+    }
+
+    @Override
+    public GameRules get() {
+        return current;
+    }
+
+    // Re-reads the file if its modification time moved; returns true if new rules were installed
+    public synchronized boolean reloadIfChanged() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (modified.equals(loadedModified)) {
+                return false;
+            }
+            loadedModified = modified;
+            current = GameRules.load(file);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Keeping previous game rules, " + file + " did not load: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Checks the file every intervalMillis on a daemon thread
+    public synchronized void watch(long intervalMillis) {
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "game-rules-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(this::reloadIfChanged, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdown();
+        }
+    }
+}
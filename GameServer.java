@@ -0,0 +1,574 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Non-blocking network front end: one acceptor thread hands connections round-robin to a fixed set
+// of selector threads, and every connection plays its own GameSessionManager session. The protocol
+// is ASCII, one command per line, and clients may pipeline any number of commands; responses come
+// back in order, one line each:
+//   NEW              -> READY <attemptsLeft>
+//   GUESS <n>        -> WIN <attempts> <points> | LOSE <target> | LOW <attemptsLeft> | HIGH <attemptsLeft> | TIMEOUT <target>
+//   HINT             -> HINT <text>
+//   ENCHANT <name>   -> OK <points> | NO <points>      (name as shown in the GUI, e.g. "Time Warp")
+//   TIME             -> TIME <secondsLeft>
+//   QUIT             -> connection closed
+// Anything else, or a guess outside a running game, answers ERR <reason>.
+// With a SessionDirectory (sharding, see ShardNode) connections do not get a session of their own;
+// they bind to a keyed session that outlives the connection, and may move between nodes:
+//   SESSION <key>    -> BOUND <attemptsLeft> <points> | MOVED <host:port> | RETRY
+//   PEER <secret>    -> OK, or ERR and the connection closed if the directory does not admit it
+// A game command for a session that has just moved answers MOVED or RETRY instead and changes
+// nothing; the client binds again where it is told. Other lines go to the directory, but only on a
+// connection that has been admitted as a peer; game clients get ERR unknown command.
+public class GameServer implements Closeable {
+    private static final int MAX_LINE = 256;
+    private static final int OUTPUT_HIGH_WATER = 64 * 1024; // Stop reading from a client that does not drain its responses
+
+    private static final byte[] NEW = ascii("NEW");
+    private static final byte[] GUESS = ascii("GUESS ");
+    private static final byte[] HINT = ascii("HINT");
+    private static final byte[] ENCHANT = ascii("ENCHANT ");
+    private static final byte[] TIME = ascii("TIME");
+    private static final byte[] QUIT = ascii("QUIT");
+    private static final byte[] SESSION = ascii("SESSION ");
+    private static final byte[] PEER = ascii("PEER ");
+
+    // Where keyed sessions live. Called on reactor threads, so every method must return quickly.
+    public interface SessionDirectory {
+        long MOVED = -1;
+        long RETRY = -2;
+
+        // The local session for the key, created if this node owns it, or MOVED or RETRY
+        long resolve(long key);
+
+        // The node to send the client to after resolve said MOVED
+        String ownerOf(long key);
+
+        // Whether a connection presenting this secret may send directory commands
+        boolean admitPeer(String secret);
+
+        // Reply line for a command outside the game protocol, or null if it is unknown; only
+        // called for admitted peers
+        String command(String line);
+    }
+
+    private final GameSessionManager sessions;
+    private final SessionDirectory directory; // null: one session per connection
+    private final ServerSocketChannel serverChannel;
+    private final Selector acceptSelector;
+    private final Reactor[] reactors;
+    private volatile boolean running = true;
+
+    public GameServer(InetSocketAddress address, int reactorCount, GameSessionManager sessions) throws IOException {
+        this(address, reactorCount, sessions, null);
+    }
+
+    public GameServer(InetSocketAddress address, int reactorCount, GameSessionManager sessions, SessionDirectory directory) throws IOException {
+        this.sessions = sessions;
+        this.directory = directory;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 4096);
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void start() {
+        for (int i = 0; i < reactors.length; i++) {
+            Thread thread = new Thread(reactors[i], "game-server-reactor-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Thread acceptor = new Thread(this::acceptLoop, "game-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        acceptSelector.wakeup();
+        for (Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+        serverChannel.close();
+    }
+
+    // Drops sessions idle past the manager's timeout and closes the connections that were playing
+    // them; returns how many sessions were dropped. Keyed connections stay open and bind afresh.
+    public int expireIdleSessions() {
+        int expired = sessions.expireIdleSessions();
+        if (expired > 0 && directory == null) {
+            for (Reactor reactor : reactors) {
+                reactor.sweep();
+            }
+        }
+        return expired;
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        try {
+            while (running) {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    reactors[next].hand(channel);
+                    next = (next + 1) % reactors.length;
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Acceptor stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private final class Reactor implements Runnable {
+        final Selector selector;
+        private final ConcurrentLinkedQueue<SocketChannel> handed = new ConcurrentLinkedQueue<>();
+        private volatile boolean sweepRequested;
+
+        Reactor() throws IOException {
+            selector = Selector.open();
+        }
+
+        void hand(SocketChannel channel) {
+            handed.add(channel);
+            selector.wakeup();
+        }
+
+        // Asks the reactor thread to close connections whose session has expired
+        void sweep() {
+            sweepRequested = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = handed.poll()) != null) {
+                        Connection connection = new Connection(channel);
+                        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    }
+                    if (sweepRequested) {
+                        sweepRequested = false;
+                        for (SelectionKey key : selector.keys()) {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isValid() && !sessions.hasSession(connection.sessionId)) {
+                                connection.close();
+                            }
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            // A bug in one connection must not stop the others on this reactor
+                            System.err.println("Closing connection after " + e);
+                            connection.close();
+                        }
+                    }
+                }
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Reactor stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(4 * MAX_LINE);
+        private ByteBuffer out = ByteBuffer.allocate(4096);
+        private long sessionId; // 0 while a keyed connection is not bound
+        private long sessionKey;
+        private boolean playing = true;
+        private boolean peer; // Admitted by the directory, so directory commands are served
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            if (directory == null) {
+                sessionId = sessions.createSession();
+            }
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            int lineStart = in.position();
+            for (int i = lineStart; i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    int lineEnd = i > lineStart && in.get(i - 1) == '\r' ? i - 1 : i;
+                    int written = out.position();
+                    boolean open;
+                    try {
+                        open = handle(lineStart, lineEnd);
+                    } catch (IllegalArgumentException e) {
+                        // The session is gone, e.g. expired between the sweep and this command
+                        out.position(written);
+                        writeLine("ERR " + e.getMessage());
+                        open = false;
+                    }
+                    if (!open) {
+                        flush();
+                        close();
+                        return;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            in.position(lineStart);
+            in.compact();
+            if (in.position() >= MAX_LINE) {
+                writeLine("ERR line too long");
+                flush();
+                close();
+                return;
+            }
+            flush();
+        }
+
+        // Returns false when the client asked to disconnect
+        private boolean handle(int start, int end) {
+            if (directory == null) {
+                return handleGame(start, end);
+            }
+            if (matches(start, end, SESSION, false)) {
+                long key = parseKey(start + SESSION.length, end);
+                if (key < 0) {
+                    writeLine("ERR session key must be a number");
+                } else {
+                    sessionKey = key;
+                    bind();
+                }
+                return true;
+            }
+            if (matches(start, end, QUIT, true)) {
+                return false;
+            }
+            if (matches(start, end, PEER, false)) {
+                String secret = new String(in.array(), start + PEER.length, end - start - PEER.length, StandardCharsets.US_ASCII);
+                peer = directory.admitPeer(secret);
+                writeLine(peer ? "OK" : "ERR not a peer");
+                return peer;
+            }
+            if (!isGameCommand(start, end)) {
+                String reply = peer ? directory.command(new String(in.array(), start, end - start, StandardCharsets.US_ASCII)) : null;
+                writeLine(reply != null ? reply : "ERR unknown command");
+                return true;
+            }
+            if (sessionId == 0) {
+                writeLine("ERR no session, send SESSION <key>");
+                return true;
+            }
+            int written = out.position();
+            try {
+                return handleGame(start, end);
+            } catch (IllegalArgumentException e) {
+                // The session moved away while this command waited; nothing was applied
+                out.position(written);
+                sessionId = 0;
+                bind();
+                return true;
+            }
+        }
+
+        // Looks up the bound key again and answers BOUND, MOVED or RETRY
+        private void bind() {
+            long resolved = directory.resolve(sessionKey);
+            if (resolved == SessionDirectory.MOVED) {
+                sessionId = 0;
+                writeWord("MOVED ").writeWord(directory.ownerOf(sessionKey)).endLine();
+            } else if (resolved == SessionDirectory.RETRY) {
+                sessionId = 0;
+                writeLine("RETRY");
+            } else {
+                sessionId = resolved;
+                try {
+                    playing = !sessions.isFinished(sessionId);
+                    writeWord("BOUND ").writeNumber(attemptsLeft()).writeWord(" ").writeNumber(sessions.getEnchantmentPoints(sessionId)).endLine();
+                } catch (IllegalArgumentException e) {
+                    sessionId = 0;
+                    writeLine("RETRY"); // Moved again in between
+                }
+            }
+        }
+
+        private boolean isGameCommand(int start, int end) {
+            return matches(start, end, NEW, true) || matches(start, end, GUESS, false) || matches(start, end, HINT, true)
+                || matches(start, end, ENCHANT, false) || matches(start, end, TIME, true);
+        }
+
+        private boolean handleGame(int start, int end) {
+            if (matches(start, end, NEW, true)) {
+                sessions.resetGame(sessionId);
+                playing = true;
+                writeWord("READY ").writeNumber(attemptsLeft()).endLine();
+            } else if (matches(start, end, GUESS, false)) {
+                handleGuess(start + GUESS.length, end);
+            } else if (matches(start, end, HINT, true)) {
+                writeWord("HINT ").writeWord(sessions.getHint(sessionId)).endLine();
+            } else if (matches(start, end, ENCHANT, false)) {
+                String name = new String(in.array(), start + ENCHANT.length, end - start - ENCHANT.length, StandardCharsets.US_ASCII);
+                Enchantment enchantment = Enchantment.fromName(name.trim());
+                if (enchantment == null) {
+                    writeLine("ERR unknown enchantment");
+                } else {
+                    boolean activated;
+                    if (playing) {
+                        activated = sessions.activateEnchantment(sessionId, enchantment);
+                    } else {
+                        sessions.recordRequest(sessionId, TrafficRecorder.Request.ENCHANT, enchantment.ordinal());
+                        activated = false;
+                    }
+                    writeWord(activated ? "OK " : "NO ").writeNumber(sessions.getEnchantmentPoints(sessionId)).endLine();
+                }
+            } else if (matches(start, end, TIME, true)) {
+                writeWord("TIME ").writeNumber(sessions.getTimeLeftSeconds(sessionId)).endLine();
+            } else if (matches(start, end, QUIT, true)) {
+                return false;
+            } else {
+                writeLine("ERR unknown command");
+            }
+            return true;
+        }
+
+        private void handleGuess(int start, int end) {
+            int guess = parseNumber(start, end);
+            GameRules rules = sessions.getRules(sessionId);
+            if (!playing && rules.isInRange(guess)) {
+                sessions.recordRequest(sessionId, TrafficRecorder.Request.GUESS, guess);
+                writeLine("ERR game finished, send NEW");
+            } else {
+                GuessResult result = sessions.guess(sessionId, guess);
+                playing &= !result.isFinal();
+                if (result == GuessResult.OUT_OF_RANGE) {
+                    writeLine("ERR guess must be a number between " + rules.getMinNumber() + " and " + rules.getMaxNumber());
+                } else if (result == GuessResult.FINISHED) {
+                    writeLine("ERR game finished, send NEW"); // Ended through another connection to the same keyed session
+                } else if (result == GuessResult.TIME_UP) {
+                    writeWord("TIMEOUT ").writeNumber(sessions.getTargetNumber(sessionId)).endLine();
+                } else if (result == GuessResult.CORRECT) {
+                    writeWord("WIN ").writeNumber(sessions.getAttempts(sessionId)).writeWord(" ")
+                        .writeNumber(sessions.getEnchantmentPoints(sessionId)).endLine();
+                } else if (result == GuessResult.GAME_OVER) {
+                    writeWord("LOSE ").writeNumber(sessions.getTargetNumber(sessionId)).endLine();
+                } else {
+                    writeWord(result == GuessResult.TOO_LOW ? "LOW " : "HIGH ").writeNumber(attemptsLeft()).endLine();
+                }
+            }
+        }
+
+        private int attemptsLeft() {
+            return sessions.getMaxAttempts(sessionId) - sessions.getAttempts(sessionId);
+        }
+
+        private boolean matches(int start, int end, byte[] word, boolean exact) {
+            int length = end - start;
+            if (exact ? length != word.length : length <= word.length) {
+                return false;
+            }
+            for (int i = 0; i < word.length; i++) {
+                if (in.get(start + i) != word[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Up to 18 digits; -1 for anything else
+        private long parseKey(int start, int end) {
+            if (start >= end || end - start > 18) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = in.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        // Digits only; -1 for anything else
+        private int parseNumber(int start, int end) {
+            if (start >= end || end - start > 9) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = in.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private Connection writeWord(String word) {
+            ensureOutput(word.length());
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                out.put(c < 128 ? (byte) c : (byte) '?');
+            }
+            return this;
+        }
+
+        private Connection writeNumber(int value) {
+            ensureOutput(11);
+            if (value < 0) {
+                out.put((byte) '-');
+                value = -value;
+            }
+            int digits = 1;
+            for (int v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            int position = out.position() + digits;
+            for (int i = position - 1; i >= out.position(); i--) {
+                out.put(i, (byte) ('0' + value % 10));
+                value /= 10;
+            }
+            out.position(position);
+            return this;
+        }
+
+        private void endLine() {
+            ensureOutput(1);
+            out.put((byte) '\n');
+        }
+
+        private void writeLine(String line) {
+            writeWord(line).endLine();
+        }
+
+        private void ensureOutput(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            int interest = out.position() > 0 ? SelectionKey.OP_WRITE : 0;
+            if (out.position() < OUTPUT_HIGH_WATER) {
+                interest |= SelectionKey.OP_READ;
+            }
+            if (key.isValid() && key.interestOps() != interest) {
+                key.interestOps(interest);
+            }
+        }
+
+        void close() {
+            if (directory == null) {
+                sessions.removeSession(sessionId); // Keyed sessions outlive their connections
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already gone
+            }
+        }
+    }
+
+    private static byte[] ascii(String word) {
+        return word.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int reactors = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameJournal journal = args.length > 2 && !args[2].equals("-") ? new GameJournal(Paths.get(args[2]), 100) : null;
+        Supplier<GameRules> rules = GameRules::defaults;
+        if (args.length > 3 && !args[3].equals("-")) {
+            GameRulesFile rulesFile = new GameRulesFile(Paths.get(args[3]));
+            rulesFile.watch(2_000);
+            rules = rulesFile;
+        }
+        GameSessionManager sessions = new GameSessionManager(TimeUnit.MINUTES.toMillis(10), null, journal, rules);
+        if (journal != null) {
+            System.out.println("Restored " + sessions.restoreSessions() + " sessions from " + args[2]);
+        }
+        if (args.length > 4) {
+            // Every request to new sessions, for TrafficReplayer; written out in full when the server is stopped
+            TrafficRecorder recorder = new TrafficRecorder(Paths.get(args[4]));
+            sessions.setTrafficRecorder(recorder);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    System.err.println("Traffic recording incomplete: " + e.getMessage());
+                }
+            }));
+        }
+        GameServer server = new GameServer(new InetSocketAddress(port), reactors, sessions);
+        server.start();
+        System.out.println("Game server listening on port " + server.getPort() + " with " + reactors + " reactors");
+        // Housekeeping: one batch of deadline expiries per tick, idle sessions swept and the journal snapshotted every minute
+        long tick = 0;
+        while (true) {
+            Thread.sleep(100);
+            sessions.expireDeadlines();
+            if (++tick % 600 == 0) {
+                server.expireIdleSessions();
+                if (journal != null) {
+                    sessions.writeSnapshot();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Drives a GameServer with many pipelined connections and reports request latency percentiles.
+//   java GameServerLoadGenerator [host] [port] [connections] [seconds] [pipelineDepth] [threads]
+// Every connection keeps pipelineDepth requests in flight, cycling through a scripted game
+// (NEW, HINT, five GUESS/HINT pairs, TIME). Latency is measured per request from the moment it is
+// queued for sending to the moment its response line arrives.
+public class GameServerLoadGenerator {
+    private static final int SCRIPT_LENGTH = 13;
+
+    private final InetSocketAddress address;
+    private final int connections;
+    private final long durationNanos;
+    private final int pipelineDepth;
+    private final int threads;
+
+    public GameServerLoadGenerator(InetSocketAddress address, int connections, long durationNanos, int pipelineDepth, int threads) {
+        this.address = address;
+        this.connections = connections;
+        this.durationNanos = durationNanos;
+        this.pipelineDepth = pipelineDepth;
+        this.threads = threads;
+    }
+
+    // Returns the merged latency histogram in nanoseconds
+    public LatencyHistogram run() throws InterruptedException {
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int share = connections / threads + (t < connections % threads ? 1 : 0);
+            Worker worker = new Worker(share, t);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "load-generator-" + t);
+            running.add(thread);
+            thread.start();
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        for (int t = 0; t < threads; t++) {
+            running.get(t).join();
+            total.add(workers.get(t).histogram);
+        }
+        return total;
+    }
+
+    private final class Worker implements Runnable {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        private final int connectionCount;
+        private final SplittableRandom random;
+
+        Worker(int connectionCount, int index) {
+            this.connectionCount = connectionCount;
+            this.random = new SplittableRandom(index);
+        }
+
+        @Override
+        public void run() {
+            List<ClientConnection> open = new ArrayList<>();
+            try (Selector selector = Selector.open()) {
+                for (int i = 0; i < connectionCount; i++) {
+                    try {
+                        SocketChannel channel = SocketChannel.open(address);
+                        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        channel.configureBlocking(false);
+                        ClientConnection connection = new ClientConnection(channel);
+                        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                        open.add(connection);
+                    } catch (IOException e) {
+                        System.err.println("Connected " + open.size() + " of " + connectionCount + " connections: " + e.getMessage());
+                        break;
+                    }
+                }
+                long end = System.nanoTime() + durationNanos;
+                for (ClientConnection connection : open) {
+                    connection.fill();
+                }
+                while (System.nanoTime() < end) {
+                    selector.select(100);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ClientConnection connection = (ClientConnection) key.attachment();
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Load worker failed: " + e.getMessage());
+            } finally {
+                for (ClientConnection connection : open) {
+                    try {
+                        connection.channel.close();
+                    } catch (IOException ignored) {
+                        // Shutting down
+                    }
+                }
+            }
+        }
+
+        private final class ClientConnection {
+            final SocketChannel channel;
+            SelectionKey key;
+            private final ByteBuffer in = ByteBuffer.allocate(8192);
+            private final ByteBuffer out = ByteBuffer.allocate(8192);
+            private final long[] sentAt = new long[pipelineDepth]; // Ring of send times for in-flight requests
+            private int head;
+            private int inFlight;
+            private int scriptStep;
+
+            ClientConnection(SocketChannel channel) {
+                this.channel = channel;
+            }
+
+            void fill() throws IOException {
+                long now = System.nanoTime();
+                while (inFlight < pipelineDepth && out.remaining() > 32) {
+                    out.put(nextCommand().getBytes(StandardCharsets.US_ASCII));
+                    sentAt[(head + inFlight) % pipelineDepth] = now;
+                    inFlight++;
+                }
+                flush();
+            }
+
+            private String nextCommand() {
+                int step = scriptStep;
+                scriptStep = (scriptStep + 1) % SCRIPT_LENGTH;
+                if (step == 0) {
+                    return "NEW\n";
+                } else if (step == SCRIPT_LENGTH - 1) {
+                    return "TIME\n";
+                } else if (step % 2 == 1) {
+                    return "HINT\n";
+                }
+                return "GUESS " + random.nextInt(51) + "\n";
+            }
+
+            void flush() throws IOException {
+                out.flip();
+                channel.write(out);
+                out.compact();
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+
+            void onReadable() throws IOException {
+                if (channel.read(in) < 0) {
+                    key.cancel();
+                    return;
+                }
+                long now = System.nanoTime();
+                in.flip();
+                while (in.hasRemaining()) {
+                    if (in.get() == '\n' && inFlight > 0) {
+                        histogram.record(now - sentAt[head]);
+                        head = (head + 1) % pipelineDepth;
+                        inFlight--;
+                    }
+                }
+                in.clear();
+                fill();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int pipelineDepth = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        GameServerLoadGenerator generator = new GameServerLoadGenerator(new InetSocketAddress(host, port), connections,
+            TimeUnit.SECONDS.toNanos(seconds), pipelineDepth, threads);
+        LatencyHistogram latency = generator.run();
+        System.out.printf("%,d connections, pipeline %d: %,.0f requests/s%n", connections, pipelineDepth, latency.getCount() / (double) seconds);
+        System.out.println(latency.summary(1_000, "us"));
+    }
+}
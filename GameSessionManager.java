@@ -0,0 +1,594 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+public class GameSessionManager {
+    private static final long ANONYMOUS = -1; // Player id of sessions created without one
+    private static final long DEADLINE_TICK_MILLIS = 100;
+    private static final int DEADLINE_STRIPES = 16; // Independent wheels so scheduling never funnels through one lock
+
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final List<TimingWheel<Long>> deadlineWheels = new ArrayList<>();
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+    private final long idleTimeoutMillis;
+    private final PointsLedger ledger; // Optional durable points store for player sessions
+    private final GameJournal journal; // Optional record of every session's events
+    private final Supplier<GameRules> rulesSource; // Read by each game at every reset
+    private final Leaderboard leaderboard; // Optional ranking of players by their finished games
+    private volatile TrafficRecorder recorder; // Optional timestamped copy of new sessions' requests
+    private final GameMetrics metrics = GameMetrics.shared();
+
+    // One game per session; the session object itself is the lock, so
+    // threads working on different sessions never contend with each other
+    private static final class Session {
+        final NumberGuessingLogic game;
+        final long playerId; // ANONYMOUS unless created for a player
+        volatile long lastAccess;
+        TimingWheel.Timeout<Long> deadline; // Pending time-out for the current game
+        boolean ranked; // The current game is already on the leaderboard
+        boolean gone; // Removed or handed off; callers that were waiting for the lock must not touch it
+        TrafficRecorder recorder; // Set if the session was created while recording
+
+        Session(long now, NumberGuessingLogic game, long playerId) {
+            this.game = game;
+            this.playerId = playerId;
+            lastAccess = now;
+            game.setPrecomputedHints(true);
+        }
+    }
+
+    // A session's state on its way to another node: the game in GameStateCodec form and what was
+    // left of its clock
+    public static final class Handoff {
+        public static final long EXPIRED = -1; // Timed out and already counted as such by the sender
+
+        private final byte[] state;
+        private final long millisLeft;
+
+        public Handoff(byte[] state, long millisLeft) {
+            this.state = state;
+            this.millisLeft = millisLeft;
+        }
+
+        public byte[] getState() {
+            return state;
+        }
+
+        // 0 once the game has run out of time, EXPIRED once that has been accounted for too
+        public long getMillisLeft() {
+            return millisLeft;
+        }
+    }
+
+    public GameSessionManager(long idleTimeoutMillis) {
+        this(idleTimeoutMillis, null);
+    }
+
+    public GameSessionManager(long idleTimeoutMillis, PointsLedger ledger) {
+        this(idleTimeoutMillis, ledger, null);
+    }
+
+    public GameSessionManager(long idleTimeoutMillis, PointsLedger ledger, GameJournal journal) {
+        this(idleTimeoutMillis, ledger, journal, GameRules::defaults);
+    }
+
+    public GameSessionManager(long idleTimeoutMillis, PointsLedger ledger, GameJournal journal, Supplier<GameRules> rulesSource) {
+        this(idleTimeoutMillis, ledger, journal, rulesSource, null);
+    }
+
+    public GameSessionManager(long idleTimeoutMillis, PointsLedger ledger, GameJournal journal, Supplier<GameRules> rulesSource,
+            Leaderboard leaderboard) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.ledger = ledger;
+        this.journal = journal;
+        this.rulesSource = rulesSource;
+        this.leaderboard = leaderboard;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < DEADLINE_STRIPES; i++) {
+            deadlineWheels.add(new TimingWheel<>(DEADLINE_TICK_MILLIS, start));
+        }
+    }
+
+    // Sessions created from now on have every request recorded, for TrafficReplayer; null stops
+    // recording for new sessions. Restored and attached sessions are never recorded.
+    public void setTrafficRecorder(TrafficRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Records a request that a front end answered without calling in, e.g. a guess after the game
+    // ended, so that recordings carry the full request mix
+    public void recordRequest(long sessionId, TrafficRecorder.Request request, int value) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            checkLive(sessionId, session);
+            record(sessionId, session, request, value);
+        }
+    }
+
+    public long createSession() {
+        return register(0, null, ANONYMOUS);
+    }
+
+    // Session for a known player: starts from the player's ledger balance and books every later change
+    // to it, and every game it finishes counts towards the player's leaderboard standing. A player may
+    // hold several sessions; an enchantment is only granted while the ledger balance covers its cost.
+    public long createSession(long playerId) {
+        if (ledger == null && leaderboard == null) {
+            throw new IllegalStateException("No points ledger or leaderboard configured");
+        }
+        if (ledger == null) {
+            return register(0, null, playerId);
+        }
+        return register((int) ledger.getBalance(playerId), ledger.listenerFor(playerId), playerId);
+    }
+
+    private long register(int startingPoints, IntConsumer pointsListener, long playerId) {
+        long id = nextSessionId.getAndIncrement();
+        Session session = new Session(System.currentTimeMillis(), new NumberGuessingLogic(TargetSource.threadLocal(), rulesSource), playerId);
+        sessions.put(id, session); // Visible before its first event, so a concurrent snapshot either includes it or precedes it
+        synchronized (session) {
+            if (journal != null) {
+                session.game.setEventListener(journal.listenerFor(id));
+                session.game.resetGame(); // Journals the starting target
+            }
+            session.recorder = recorder;
+            record(id, session, TrafficRecorder.Request.NEW, session.game.getTargetNumber());
+            session.game.addEnchantmentPoints(startingPoints);
+            if (startingPoints != 0) {
+                record(id, session, TrafficRecorder.Request.POINTS, startingPoints);
+            }
+            session.game.setPointsListener(pointsListener);
+            startClock(id, session);
+        }
+        return id;
+    }
+
+    // Re-creates the sessions recorded in the journal under their original ids, e.g. at startup, and
+    // starts a fresh clock for every game still in play; returns how many were restored.
+    // The journal does not record players, so restored sessions are anonymous.
+    public int restoreSessions() throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("No game journal configured");
+        }
+        Map<Long, NumberGuessingLogic> games = journal.replay(rulesSource);
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, NumberGuessingLogic> entry : games.entrySet()) {
+            long id = entry.getKey();
+            Session session = new Session(now, entry.getValue(), ANONYMOUS);
+            sessions.put(id, session);
+            synchronized (session) {
+                session.game.setEventListener(journal.listenerFor(id));
+                if (!session.game.isFinished(now)) {
+                    startClock(id, session);
+                }
+            }
+            nextSessionId.accumulateAndGet(id + 1, Math::max);
+        }
+        return games.size();
+    }
+
+    // Captures every session's state so that replay can start here; the journal then drops
+    // the segments it no longer needs. Returns the number of sessions captured.
+    public int writeSnapshot() throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("No game journal configured");
+        }
+        GameJournal.Snapshot snapshot = journal.newSnapshot();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Session> entry : sessions.entrySet()) {
+            Session session = entry.getValue();
+            synchronized (session) {
+                snapshot.add(entry.getKey(), session.game, journal.position(), session.game.isTimedOut(now));
+            }
+        }
+        journal.writeSnapshot(snapshot);
+        return snapshot.getSessionCount();
+    }
+
+    // Takes a session out of this manager to move it elsewhere. The state is read and the session
+    // removed under its lock, so no operation can change it afterwards; calls that were already
+    // waiting fail as for an unknown session. Null if there is no such session.
+    public Handoff detachSession(long sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (session) {
+            if (session.gone) {
+                return null;
+            }
+            byte[] state = GameStateCodec.encodeState(session.game);
+            long millisLeft = session.game.getTimeLeftMillis(now);
+            if (session.game.isTimedOut(now)) {
+                millisLeft = session.deadline == null ? Handoff.EXPIRED : 0;
+            }
+            sessions.remove(sessionId);
+            closed(sessionId, session);
+            return new Handoff(state, millisLeft);
+        }
+    }
+
+    // Installs a session detached from another manager under a new id, with the same game, points
+    // and time left; a won or lost game gets no clock, and one that ran out of time expires here
+    // unless the sender already did that. Points arrive as state, so no ledger or listener sees them
+    // again. Not available with a journal, which has no event that carries a whole game. Throws
+    // IllegalArgumentException, attaching nothing, for a state that does not fit this manager's rules.
+    public long attachSession(Handoff handoff) {
+        if (journal != null) {
+            throw new IllegalStateException("Sessions cannot be attached to a journaled manager");
+        }
+        long id = nextSessionId.getAndIncrement();
+        long now = System.currentTimeMillis();
+        Session session = new Session(now, new NumberGuessingLogic(TargetSource.threadLocal(), rulesSource), ANONYMOUS);
+        synchronized (session) {
+            GameStateCodec.decodeState(ByteBuffer.wrap(handoff.getState()), session.game);
+            if (handoff.getMillisLeft() == Handoff.EXPIRED) {
+                session.game.timeOut();
+            } else if (handoff.getMillisLeft() <= 0) {
+                expire(id, session);
+            } else if (!session.game.isFinished(now)) {
+                session.game.resumeClock(now, handoff.getMillisLeft());
+                session.deadline = wheelFor(id).schedule(id, session.game.getDeadlineMillis());
+            }
+            sessions.put(id, session);
+        }
+        return id;
+    }
+
+    public boolean removeSession(long sessionId) {
+        Session session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+        synchronized (session) {
+            closed(sessionId, session);
+        }
+        return true;
+    }
+
+    public boolean hasSession(long sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public String checkGuess(long sessionId, int guess) {
+        return guess(sessionId, guess).getMessage();
+    }
+
+    // A guess outside the rules' range answers OUT_OF_RANGE and one after the game was won or lost
+    // FINISHED; neither is counted, as in checkGuesses
+    public GuessResult guess(long sessionId, int guess) {
+        long start = metrics.start();
+        Session session = touch(sessionId);
+        GuessResult result;
+        synchronized (session) {
+            checkLive(sessionId, session);
+            record(sessionId, session, TrafficRecorder.Request.GUESS, guess);
+            if (!session.game.getRules().isInRange(guess)) {
+                result = GuessResult.OUT_OF_RANGE;
+            } else if (session.game.isTimedOut(session.lastAccess)) {
+                result = GuessResult.TIME_UP;
+            } else if (session.game.isFinished(session.lastAccess)) {
+                result = GuessResult.FINISHED;
+            } else {
+                result = session.game.guess(guess);
+                if (result.isFinal()) {
+                    finished(sessionId, session, result);
+                }
+            }
+        }
+        metrics.record(GameMetrics.Operation.CHECK_GUESS, start); // Every answer counts, as in checkGuesses
+        if (result == GuessResult.CORRECT) {
+            metrics.recordOutcome(GameMetrics.Outcome.WIN);
+        } else if (result == GuessResult.GAME_OVER) {
+            metrics.recordOutcome(GameMetrics.Outcome.LOSS);
+        }
+        return result;
+    }
+
+    // Applies guesses[i] to sessionIds[i] for i below count and stores each GuessResult code in
+    // results[i]. Consecutive guesses for the same session share one lookup and one lock, and the
+    // clock and metrics are read once per batch. Bad entries do not fail the batch: an unknown
+    // session gets NO_SESSION, a guess outside the session's range OUT_OF_RANGE, and a guess after
+    // its game was won or lost FINISHED.
+    public void checkGuesses(long[] sessionIds, int[] guesses, byte[] results, int count) {
+        long start = metrics.start();
+        long now = System.currentTimeMillis();
+        int wins = 0;
+        int losses = 0;
+        int i = 0;
+        while (i < count) {
+            long sessionId = sessionIds[i];
+            int end = i + 1;
+            while (end < count && sessionIds[end] == sessionId) {
+                end++;
+            }
+            Session session = sessions.get(sessionId);
+            if (session == null) {
+                Arrays.fill(results, i, end, GuessResult.NO_SESSION.getCode());
+                i = end;
+                continue;
+            }
+            session.lastAccess = now;
+            synchronized (session) {
+                if (session.gone) {
+                    Arrays.fill(results, i, end, GuessResult.NO_SESSION.getCode());
+                    i = end;
+                    continue;
+                }
+                NumberGuessingLogic game = session.game;
+                for (; i < end; i++) {
+                    record(sessionId, session, TrafficRecorder.Request.GUESS, guesses[i]);
+                    GuessResult result;
+                    if (!game.getRules().isInRange(guesses[i])) {
+                        result = GuessResult.OUT_OF_RANGE;
+                    } else if (game.isTimedOut(now)) {
+                        result = GuessResult.TIME_UP;
+                    } else if (game.isFinished(now)) {
+                        result = GuessResult.FINISHED;
+                    } else {
+                        result = game.guess(guesses[i]);
+                        if (result == GuessResult.CORRECT) {
+                            wins++;
+                            finished(sessionId, session, result);
+                        } else if (result == GuessResult.GAME_OVER) {
+                            losses++;
+                            finished(sessionId, session, result);
+                        }
+                    }
+                    results[i] = result.getCode();
+                }
+            }
+        }
+        metrics.record(GameMetrics.Operation.CHECK_GUESS, start, count);
+        metrics.recordOutcomes(GameMetrics.Outcome.WIN, wins);
+        metrics.recordOutcomes(GameMetrics.Outcome.LOSS, losses);
+    }
+
+    public String getHint(long sessionId) {
+        long start = metrics.start();
+        Session session = touch(sessionId);
+        String hint;
+        synchronized (session) {
+            checkLive(sessionId, session);
+            record(sessionId, session, TrafficRecorder.Request.HINT, 0);
+            hint = session.game.getHint();
+        }
+        metrics.record(GameMetrics.Operation.GET_HINT, start);
+        return hint;
+    }
+
+    public boolean activateEnchantment(long sessionId, String enchantment) {
+        Enchantment typed = Enchantment.fromName(enchantment);
+        if (typed == null) {
+            touch(sessionId); // Not recorded: a recording holds enchantments by ordinal
+            return false;
+        }
+        return activateEnchantment(sessionId, typed);
+    }
+
+    public boolean activateEnchantment(long sessionId, Enchantment enchantment) {
+        long start = metrics.start();
+        Session session = touch(sessionId);
+        boolean activated;
+        synchronized (session) {
+            checkLive(sessionId, session);
+            record(sessionId, session, TrafficRecorder.Request.ENCHANT, enchantment.ordinal());
+            if (ledger != null && session.playerId != ANONYMOUS) {
+                // The ledger's balance is the one all of the player's sessions share
+                int cost = session.game.getRules().getCost(enchantment);
+                activated = ledger.trySpend(session.playerId, cost, () -> session.game.activateEnchantment(enchantment));
+            } else {
+                activated = session.game.activateEnchantment(enchantment);
+            }
+            if (activated && enchantment == Enchantment.TIME_WARP && session.deadline != null) {
+                wheelFor(sessionId).cancel(session.deadline);
+                session.deadline = wheelFor(sessionId).schedule(sessionId, session.game.getDeadlineMillis());
+            }
+        }
+        metrics.record(GameMetrics.Operation.ACTIVATE_ENCHANTMENT, start);
+        if (activated) {
+            metrics.recordEnchantment(enchantment);
+        }
+        return activated;
+    }
+
+    // Starts a new game in the session and its countdown
+    public void resetGame(long sessionId) {
+        long start = metrics.start();
+        Session session = touch(sessionId);
+        synchronized (session) {
+            checkLive(sessionId, session);
+            session.game.resetGame();
+            startClock(sessionId, session);
+            record(sessionId, session, TrafficRecorder.Request.NEW, session.game.getTargetNumber());
+        }
+        metrics.record(GameMetrics.Operation.RESET_GAME, start);
+    }
+
+    // 0 once the game is over, however it ended
+    public int getTimeLeftSeconds(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            checkLive(sessionId, session);
+            record(sessionId, session, TrafficRecorder.Request.TIME, 0);
+            return session.game.isFinished(session.lastAccess) ? 0 : session.game.getTimeLeftSeconds(session.lastAccess);
+        }
+    }
+
+    public boolean isTimedOut(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            return session.game.isTimedOut(session.lastAccess);
+        }
+    }
+
+    public boolean isFinished(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            return session.game.isFinished(session.lastAccess);
+        }
+    }
+
+    public int getAttempts(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            return session.game.getAttempts();
+        }
+    }
+
+    public int getMaxAttempts(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            return session.game.getMaxAttempts();
+        }
+    }
+
+    // The rules of the session's current game
+    public GameRules getRules(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            return session.game.getRules();
+        }
+    }
+
+    public int getTargetNumber(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            return session.game.getTargetNumber();
+        }
+    }
+
+    public int getEnchantmentPoints(long sessionId) {
+        Session session = touch(sessionId);
+        synchronized (session) {
+            return session.game.getEnchantmentPoints();
+        }
+    }
+
+    // Advances the deadline wheel and returns, as one batch, the sessions whose game timed out since the
+    // last call. Games without activity cost nothing until their slot comes up.
+    public List<Long> expireDeadlines() {
+        return expireDeadlines(System.currentTimeMillis());
+    }
+
+    public List<Long> expireDeadlines(long now) {
+        List<Long> timedOut = new ArrayList<>();
+        for (TimingWheel<Long> wheel : deadlineWheels) {
+            for (Long sessionId : wheel.advance(now)) {
+                Session session = sessions.get(sessionId);
+                if (session != null) {
+                    synchronized (session) {
+                        if (!session.gone && session.game.isTimedOut(now) && session.deadline != null) {
+                            expire(sessionId, session);
+                            timedOut.add(sessionId);
+                        }
+                    }
+                }
+            }
+        }
+        return timedOut;
+    }
+
+    // Drops every session that has not been used for idleTimeoutMillis; returns how many were removed
+    public int expireIdleSessions() {
+        return expireIdleSessions(System.currentTimeMillis());
+    }
+
+    public int expireIdleSessions(long now) {
+        int expired = 0;
+        Iterator<Map.Entry<Long, Session>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Session> entry = it.next();
+            Session session = entry.getValue();
+            if (now - session.lastAccess >= idleTimeoutMillis) {
+                it.remove();
+                synchronized (session) {
+                    closed(entry.getKey(), session);
+                }
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private TimingWheel<Long> wheelFor(long sessionId) {
+        return deadlineWheels.get((int) (sessionId & (DEADLINE_STRIPES - 1)));
+    }
+
+    // Ends the game on time and accounts for it once: the deadline is dropped, so neither the
+    // wheel nor a handoff can expire it again; caller holds the session lock
+    private void expire(long sessionId, Session session) {
+        session.game.timeOut();
+        session.deadline = null;
+        record(sessionId, session, TrafficRecorder.Request.TIMEOUT, 0);
+        finished(sessionId, session, GuessResult.TIME_UP);
+        metrics.recordOutcome(GameMetrics.Outcome.TIMEOUT);
+    }
+
+    // Stops the clock of a won or lost game, so it cannot time out as well, and books a player's
+    // finished game on the leaderboard, once per game; caller holds the session lock
+    private void finished(long sessionId, Session session, GuessResult result) {
+        if (result != GuessResult.TIME_UP) {
+            wheelFor(sessionId).cancel(session.deadline);
+            session.deadline = null;
+            session.game.stopClock();
+        }
+        if (leaderboard != null && session.playerId != ANONYMOUS && !session.ranked) {
+            session.ranked = true;
+            boolean won = result == GuessResult.CORRECT;
+            leaderboard.recordGame(session.playerId, won, session.game.getAttempts(), won ? session.game.getRules().getWinPoints() : 0);
+        }
+    }
+
+    private void closed(long sessionId, Session session) {
+        session.gone = true;
+        wheelFor(sessionId).cancel(session.deadline);
+        if (journal != null) {
+            journal.append(sessionId, GameEvent.END, 0);
+        }
+        record(sessionId, session, TrafficRecorder.Request.END, 0);
+    }
+
+    // Caller holds the session lock, so a session's requests are recorded in the order they ran
+    private static void record(long sessionId, Session session, TrafficRecorder.Request request, int value) {
+        if (session.recorder != null) {
+            session.recorder.record(sessionId, request, value);
+        }
+    }
+
+    private void startClock(long sessionId, Session session) {
+        session.game.startClock(session.lastAccess);
+        session.ranked = false;
+        wheelFor(sessionId).cancel(session.deadline);
+        session.deadline = wheelFor(sessionId).schedule(sessionId, session.game.getDeadlineMillis());
+    }
+
+    // Whether the session was removed while the caller waited for its lock
+    private static void checkLive(long sessionId, Session session) {
+        if (session.gone) {
+            throw new IllegalArgumentException("Unknown session: " + sessionId);
+        }
+    }
+
+    private Session touch(long sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            throw new IllegalArgumentException("Unknown session: " + sessionId);
+        }
+        session.lastAccess = System.currentTimeMillis();
+        return session;
+    }
+}
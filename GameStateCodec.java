@@ -0,0 +1,317 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Versioned binary form of a game's state, of guess results and of game events, written straight
+// into a caller's ByteBuffer (heap or direct) and read straight out of one, with no intermediate
+// arrays or objects. Integers are LEB128 varints, zig-zag encoded where they can be negative, so a
+// default game takes about 8 bytes and no field has a size limit. Unlike the packed long
+// (NumberGuessingLogic.toPackedState) it covers every range and candidate-hint games. Rules, clock
+// and listeners are not part of the state: a decoded game keeps its own rules, which must be the
+// ones it was encoded under.
+//   state   header byte (version << 4 | CANDIDATES), target, lastGuess, attempts, maxAttempts,
+//           enchantmentFlags, points, then with CANDIDATES: target - low, high - target, residues,
+//           hintAttempts, hintFlags
+//   result  GuessResult code byte
+//   event   GameEvent code byte, value
+// As a program it round-trips random games under several rules and feeds the decoder corrupted
+// encodings, and prints OK if every game came back exactly and every bad input was rejected cleanly.
+//   java GameStateCodec [games]
+public final class GameStateCodec {
+    static final int VERSION = 1;
+    public static final int MAX_STATE_BYTES = 64;
+    public static final int MAX_EVENT_BYTES = 6;
+    private static final int CANDIDATES = 1; // Header bit: a CandidateSet follows
+    private static final int FLAG_BITS = (1 << Enchantment.values().length) - 1;
+
+    private GameStateCodec() {
+    }
+
+    // Writes the game's state at the buffer's position. Throws BufferOverflowException if fewer
+    // than the bytes needed (at most MAX_STATE_BYTES) remain.
+    public static void encodeState(NumberGuessingLogic game, ByteBuffer out) {
+        CandidateSet candidates = game.getCandidates();
+        int target = game.getTargetNumber();
+        out.put((byte) (VERSION << 4 | (candidates != null ? CANDIDATES : 0)));
+        putVarint(out, target);
+        putSigned(out, game.getLastGuess());
+        putVarint(out, game.getAttempts());
+        putVarint(out, game.getMaxAttempts());
+        putVarint(out, game.getEnchantmentFlags());
+        putSigned(out, game.getEnchantmentPoints());
+        if (candidates != null) {
+            putSigned(out, (long) target - candidates.getLow());
+            putSigned(out, (long) candidates.getHigh() - target);
+            putVarint(out, candidates.getResidues());
+            putSigned(out, candidates.getHintAttempts());
+            putVarint(out, candidates.getHintFlags());
+        }
+    }
+
+    public static byte[] encodeState(NumberGuessingLogic game) {
+        ByteBuffer out = ByteBuffer.allocate(MAX_STATE_BYTES);
+        encodeState(game, out);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    // Reads one state at the buffer's position into the game. Everything is read and checked before
+    // the game changes, so on IllegalArgumentException (truncated or corrupt input, another version,
+    // or a state that does not fit the game's rules) the game is as it was; the buffer's position is
+    // then unspecified.
+    public static void decodeState(ByteBuffer in, NumberGuessingLogic game) {
+        try {
+            int header = in.get() & 0xFF;
+            if (header >>> 4 != VERSION || (header & 0x0F & ~CANDIDATES) != 0) {
+                throw new IllegalArgumentException("Unknown game state header 0x" + Integer.toHexString(header));
+            }
+            int target = getUnsigned(in);
+            int lastGuess = getSigned(in);
+            int attempts = getUnsigned(in);
+            int maxAttempts = getUnsigned(in);
+            int flags = getUnsigned(in);
+            int points = getSigned(in);
+            GameRules rules = game.getRules();
+            if (!rules.isInRange(target) || flags > FLAG_BITS) {
+                throw new IllegalArgumentException("Game state does not fit the rules");
+            }
+            // Second Chance is the only way past the rules' attempts, by one; lastGuess is -1 until
+            // the first guess, and every counted guess is in range
+            if (maxAttempts < 1 || maxAttempts > rules.getMaxAttempts() + 1 || attempts > maxAttempts) {
+                throw new IllegalArgumentException("Game state attempts do not fit the rules");
+            }
+            if (attempts == 0 ? lastGuess != -1 : !rules.isInRange(lastGuess)) {
+                throw new IllegalArgumentException("Game state last guess does not fit the rules");
+            }
+            boolean hasCandidates = (header & CANDIDATES) != 0;
+            if (hasCandidates != rules.isCandidateHints()) {
+                throw new IllegalArgumentException(hasCandidates ? "Game state has candidates the rules do not use"
+                    : "Game state has no candidates but the rules use them");
+            }
+            if (hasCandidates) {
+                long low = target - getSignedLong(in);
+                long high = target + getSignedLong(in);
+                int residues = getUnsigned(in);
+                int hintAttempts = getSigned(in);
+                int hintFlags = getUnsigned(in);
+                // An emptied set has low past high, so either end may sit one outside the range
+                if (low < rules.getMinNumber() - 1L || low > rules.getMaxNumber() + 1L || high < rules.getMinNumber() - 1L
+                        || high > rules.getMaxNumber() + 1L || residues >= 1 << CandidateSet.MODULUS || hintFlags > FLAG_BITS) {
+                    throw new IllegalArgumentException("Game state candidates do not fit the rules");
+                }
+                game.getCandidates().restore((int) low, (int) high, residues, hintAttempts, hintFlags);
+            }
+            game.restoreState(target, lastGuess, attempts, maxAttempts, points, flags);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated game state", e);
+        }
+    }
+
+    public static void encodeResult(GuessResult result, ByteBuffer out) {
+        out.put(result.getCode());
+    }
+
+    public static GuessResult decodeResult(ByteBuffer in) {
+        try {
+            GuessResult result = GuessResult.fromCode(in.get());
+            if (result == null) {
+                throw new IllegalArgumentException("Unknown guess result code");
+            }
+            return result;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated guess result", e);
+        }
+    }
+
+    // At most MAX_EVENT_BYTES
+    public static void encodeEvent(GameEvent event, int value, ByteBuffer out) {
+        out.put((byte) event.ordinal());
+        putSigned(out, value);
+    }
+
+    // Reads one event and hands it to the listener, e.g. a game's apply or a journal's append
+    public static void decodeEvent(ByteBuffer in, GameEvent.Listener listener) {
+        try {
+            GameEvent event = GameEvent.fromCode(in.get());
+            if (event == null) {
+                throw new IllegalArgumentException("Unknown game event code");
+            }
+            listener.onEvent(event, getSigned(in));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated game event", e);
+        }
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static void putSigned(ByteBuffer out, long value) {
+        putVarint(out, value << 1 ^ value >> 63);
+    }
+
+    // Rejects encodings longer than ten bytes, so corrupt input cannot loop or wrap silently
+    static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than ten bytes");
+    }
+
+    static long getSignedLong(ByteBuffer in) {
+        long value = getVarint(in);
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static int getUnsigned(ByteBuffer in) {
+        long value = getVarint(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Game state field out of range");
+        }
+        return (int) value;
+    }
+
+    static int getSigned(ByteBuffer in) {
+        long value = getSignedLong(in);
+        if (value != (int) value) {
+            throw new IllegalArgumentException("Game state field out of range");
+        }
+        return (int) value;
+    }
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        SplittableRandom random = new SplittableRandom(42);
+        GameRules[] allRules = {
+            GameRules.defaults(),
+            rules("range.max", "2000000000"),
+            rules("range.min", "1000", "range.max", "9999", "hint.candidates", "true", "attempts.max", "40"),
+        };
+        long roundTrips = 0;
+        long rejected = 0;
+        int failures = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_STATE_BYTES);
+        for (int i = 0; i < games && failures < 10; i++) {
+            GameRules gameRules = allRules[i % allRules.length];
+            NumberGuessingLogic game = new NumberGuessingLogic(TargetSource.threadLocal(), () -> gameRules);
+            play(game, random);
+            buffer.clear();
+            encodeState(game, buffer);
+            buffer.flip();
+            byte[] encoded = new byte[buffer.remaining()];
+            buffer.duplicate().get(encoded);
+            NumberGuessingLogic copy = new NumberGuessingLogic(TargetSource.threadLocal(), () -> gameRules);
+            decodeState(buffer, copy);
+            if (buffer.hasRemaining() || !Arrays.equals(encodeState(copy), encoded) || !sameGame(game, copy)) {
+                System.out.println("FAIL round trip under rules " + (i % allRules.length) + ": " + Arrays.toString(encoded));
+                failures++;
+            }
+            roundTrips++;
+            // Corrupt copies: truncated, one byte flipped, random bytes. Each must decode or be
+            // rejected with IllegalArgumentException, leaving the game untouched when rejected.
+            byte[] bad = corrupt(encoded, random);
+            NumberGuessingLogic target = new NumberGuessingLogic(TargetSource.threadLocal(), () -> gameRules);
+            byte[] before = encodeState(target);
+            try {
+                decodeState(ByteBuffer.wrap(bad), target);
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                if (!Arrays.equals(encodeState(target), before)) {
+                    System.out.println("FAIL rejected input changed the game: " + Arrays.toString(bad));
+                    failures++;
+                }
+            } catch (RuntimeException e) {
+                System.out.println("FAIL " + e + " on " + Arrays.toString(bad));
+                failures++;
+            }
+        }
+        ByteBuffer events = ByteBuffer.allocate(MAX_EVENT_BYTES * 64);
+        int[] values = {0, 1, -1, 63, 64, -65, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int value : values) {
+            for (GameEvent event : GameEvent.values()) {
+                encodeEvent(event, value, events);
+            }
+        }
+        events.flip();
+        int[] index = new int[1];
+        while (events.hasRemaining()) {
+            decodeEvent(events, (event, value) -> {
+                int n = index[0]++;
+                if (event != GameEvent.values()[n % GameEvent.values().length] || value != values[n / GameEvent.values().length]) {
+                    System.out.println("FAIL event " + n + " came back as " + event + " " + value);
+                }
+            });
+        }
+        System.out.printf("%d games round-tripped, %d corrupt inputs rejected: %s%n", roundTrips, rejected,
+            failures == 0 ? "OK" : failures + " failures");
+    }
+
+    private static GameRules rules(String... pairs) {
+        java.util.Properties properties = new java.util.Properties();
+        for (int i = 0; i < pairs.length; i += 2) {
+            properties.setProperty(pairs[i], pairs[i + 1]);
+        }
+        return GameRules.fromProperties(properties);
+    }
+
+    // A random stretch of play: points, enchantments, guesses and hints, stopping anywhere
+    private static void play(NumberGuessingLogic game, SplittableRandom random) {
+        game.addEnchantmentPoints(random.nextInt(-5, 40));
+        GameRules rules = game.getRules();
+        int steps = random.nextInt(rules.getMaxAttempts() + 3);
+        for (int s = 0; s < steps && !game.isFinished(0); s++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    game.activateEnchantment(Enchantment.values()[random.nextInt(Enchantment.values().length)]);
+                    break;
+                case 1:
+                    game.describeHint();
+                    break;
+                default:
+                    game.guess(rules.getMinNumber() + random.nextInt(rules.getRangeSize()));
+                    break;
+            }
+        }
+    }
+
+    private static byte[] corrupt(byte[] encoded, SplittableRandom random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return Arrays.copyOf(encoded, random.nextInt(encoded.length));
+            case 1:
+                byte[] flipped = encoded.clone();
+                flipped[random.nextInt(flipped.length)] ^= (byte) (1 << random.nextInt(8));
+                return flipped;
+            default:
+                byte[] noise = new byte[random.nextInt(MAX_STATE_BYTES)];
+                random.nextBytes(noise);
+                return noise;
+        }
+    }
+
+    private static boolean sameGame(NumberGuessingLogic a, NumberGuessingLogic b) {
+        if (a.getTargetNumber() != b.getTargetNumber() || a.getLastGuess() != b.getLastGuess() || a.getAttempts() != b.getAttempts()
+                || a.getMaxAttempts() != b.getMaxAttempts() || a.getEnchantmentFlags() != b.getEnchantmentFlags()
+                || a.getEnchantmentPoints() != b.getEnchantmentPoints()) {
+            return false;
+        }
+        // Asking for the hint must leave both games in the same place. A hint already given before
+        // the copy was made is repeated there as its candidates only, so only those are compared.
+        Hint hintA = a.describeHint();
+        Hint hintB = b.describeHint();
+        boolean sameHint = a.getRules().isCandidateHints()
+            ? hintA.getCandidatesLeft() == hintB.getCandidatesLeft() && hintA.getCandidatesLow() == hintB.getCandidatesLow()
+                && hintA.getCandidatesHigh() == hintB.getCandidatesHigh()
+            : hintA.getText().equals(hintB.getText());
+        return sameHint && Arrays.equals(encodeState(a), encodeState(b));
+    }
+}
@@ -0,0 +1,38 @@
+// Outcome of one guess. Batch calls report each result as its getCode() byte, so a batch of any size
+// comes back as one primitive array; getMessage() is the string checkGuess has always returned.
+public enum GuessResult {
+    TOO_LOW("Too low!"),
+    TOO_HIGH("Too high!"),
+    CORRECT("correct"),
+    GAME_OVER("Game over"),
+    TIME_UP("Time's up"), // The game's deadline had passed; the guess was not counted
+    NO_SESSION("No such session"), // Batch calls only: unknown session or slot; nothing changed
+    OUT_OF_RANGE("Out of range"), // The guess is outside the rules' range and was not counted
+    FINISHED("Game finished"); // The game was already won or lost; the guess was not counted
+
+    private static final GuessResult[] VALUES = values();
+
+    private final String message;
+
+    GuessResult(String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public byte getCode() {
+        return (byte) ordinal();
+    }
+
+    // Whether the game accepts no more guesses after this result
+    public boolean isFinal() {
+        return this == CORRECT || this == GAME_OVER || this == TIME_UP || this == FINISHED;
+    }
+
+    // Codes are ordinals; null for an unknown code
+    public static GuessResult fromCode(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+}
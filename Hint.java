@@ -0,0 +1,103 @@
+// What a hint says, as a type plus numbers, with the text only built when getText() is first called.
+// Headless and networked callers can act on the fields and never format a sentence; a UI in another
+// language can render the fields itself. Games reuse one Hint each, so a Hint returned by
+// NumberGuessingLogic.describeHint is only valid until the next hint request on that game.
+public final class Hint {
+    public enum Type {
+        NONE, // Nothing beyond the candidates summary
+        START, // isPositive: the number is even
+        START_INSIGHT, // START plus the half holding the number, getLow to getHigh
+        CLARITY, // isPositive: the number is even
+        PRECISION, // Within getValue of the number
+        VERY_CLOSE, // Early attempts: within getValue
+        CLOSE, // Early attempts: within getValue, the wider threshold
+        EXTREMELY_CLOSE, // Mid attempts: within getValue
+        FINAL_CLOSE, // Final attempts: within getValue
+        INSIGHT, // Between getLow and getHigh
+        HALF, // In the half getLow to getHigh; isPositive for the lower half
+        MULTIPLE, // isPositive: the number is a multiple of getValue
+        DIRECTION, // isPositive: try higher than getValue (the last guess), otherwise lower
+        DIVISIBLE, // isPositive: the number is divisible by getValue
+        BUCKET // Between getLow and getHigh; getHigh is Integer.MAX_VALUE for "or higher", getValue is the bucket index
+    }
+
+    private GameRules rules;
+    private Type type = Type.NONE;
+    private boolean positive;
+    private int value;
+    private int low;
+    private int high;
+    private long candidatesLeft = -1; // Candidate summary, only under rules with candidate hints
+    private int candidatesLow;
+    private int candidatesHigh;
+    private String text;
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isPositive() {
+        return positive;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public int getLow() {
+        return low;
+    }
+
+    public int getHigh() {
+        return high;
+    }
+
+    public boolean hasCandidates() {
+        return candidatesLeft >= 0;
+    }
+
+    // How many numbers are still possible, or -1 without candidate tracking
+    public long getCandidatesLeft() {
+        return candidatesLeft;
+    }
+
+    public int getCandidatesLow() {
+        return candidatesLow;
+    }
+
+    public int getCandidatesHigh() {
+        return candidatesHigh;
+    }
+
+    // The English sentence NumberGuessingLogic.getHint returns, built on first use
+    public String getText() {
+        if (text == null) {
+            text = rules.render(this);
+        }
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+
+    Hint set(GameRules rules, Type type, boolean positive, int value, int low, int high) {
+        this.rules = rules;
+        this.type = type;
+        this.positive = positive;
+        this.value = value;
+        this.low = low;
+        this.high = high;
+        candidatesLeft = -1;
+        text = null;
+        return this;
+    }
+
+    void setCandidates(long left, int low, int high) {
+        candidatesLeft = left;
+        candidatesLow = low;
+        candidatesHigh = high;
+        text = null;
+    }
+}
@@ -0,0 +1,332 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Exact analysis of the hint rules under optimal play. For each set of enchantments bought before the
+// first hint, a memoised search over what the player knows (the candidate targets as a bitmask, the
+// attempt count and the hint enchantments still active) finds the guess policy that wins most often,
+// then with the fewest attempts, over a uniformly random target. Targets a player cannot tell apart
+// get the same hint text, so every hint splits the candidates exactly the way a player sees it.
+// Walking the optimal policy then attributes to each hint branch the bits it removes:
+// log2(candidates before / candidates after), after the Too low/Too high result is already counted.
+// Guesses outside the candidates are considered too, since a miss can still buy a better hint.
+// Enchantment sets are analysed in parallel and share one memo per attempt limit.
+//   java HintEntropyAnalyzer [rulesFile]
+public class HintEntropyAnalyzer {
+    private static final int MAX_NUMBERS = 56; // Candidates plus attempts and flags fit one long memo key
+    private static final int MAX_ATTEMPTS = 15;
+    private static final int HINT_FLAGS = Enchantment.INSIGHT.getMask() | Enchantment.PRECISION.getMask() | Enchantment.CLARITY.getMask();
+    private static final Enchantment[] CHOICES = {Enchantment.INSIGHT, Enchantment.CLARITY, Enchantment.PRECISION, Enchantment.SECOND_CHANCE};
+
+    private final GameRules rules;
+    private final int numbers;
+    private final long[] below; // Candidates under each guess
+    private final long[] above;
+    private final int[] guessOrder; // Middle of the range first, so good policies are found early
+    // Targets giving each distinct hint text, and that hint's branch name, by [attempts][flags][guess]
+    private final long[][][][] hintMasks;
+    private final String[][][][] hintBranches;
+    private final long[][] startMasks; // The starting hint, by [flags]
+    private final String[][] startBranches;
+    private final Map<Integer, ConcurrentHashMap<Long, Long>> memos = new ConcurrentHashMap<>();
+
+    // Outcome of optimal play with one enchantment set
+    public static final class Result {
+        private final Set<Enchantment> enchantments;
+        private final int numbers;
+        private final long wins; // Summed over all targets
+        private final long attempts;
+        private final Map<String, double[]> branches = new TreeMap<>(); // {games seeing it, bits} per game, by name
+
+        Result(Set<Enchantment> enchantments, int numbers, long wins, long attempts) {
+            this.enchantments = enchantments;
+            this.numbers = numbers;
+            this.wins = wins;
+            this.attempts = attempts;
+        }
+
+        public Set<Enchantment> getEnchantments() {
+            return enchantments;
+        }
+
+        public double winRate() {
+            return (double) wins / numbers;
+        }
+
+        // Guesses per game, lost games counting every attempt they had
+        public double expectedAttempts() {
+            return (double) attempts / numbers;
+        }
+
+        // Share of games in which the hint branch is given
+        public double frequency(String branch) {
+            double[] stats = branches.get(branch);
+            return stats == null ? 0 : stats[0];
+        }
+
+        // Average bits the branch removes when it is given
+        public double bitsWhenGiven(String branch) {
+            double[] stats = branches.get(branch);
+            return stats == null || stats[0] == 0 ? 0 : stats[1] / stats[0];
+        }
+
+        // Expected bits per game from the branch
+        public double bitsPerGame(String branch) {
+            double[] stats = branches.get(branch);
+            return stats == null ? 0 : stats[1];
+        }
+
+        public Set<String> getBranches() {
+            return branches.keySet();
+        }
+
+        void add(String branch, double weight, double bits) {
+            double[] stats = branches.computeIfAbsent(branch, b -> new double[2]);
+            stats[0] += weight;
+            stats[1] += weight * bits;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            String name = enchantments.isEmpty() ? "no enchantments"
+                : enchantments.stream().map(Enchantment::getDisplayName).collect(Collectors.joining(" + "));
+            out.append(String.format("== %s: win rate %.4f  expected attempts %.3f ==%n", name, winRate(), expectedAttempts()));
+            for (String branch : branches.keySet()) {
+                out.append(String.format("  %-16s given in %6.2f%% of games  %5.2f bits when given  %5.3f bits/game%n",
+                    branch, 100 * frequency(branch), bitsWhenGiven(branch), bitsPerGame(branch)));
+            }
+            return out.toString();
+        }
+    }
+
+    public HintEntropyAnalyzer(GameRules rules) {
+        if (rules.isCandidateHints() || rules.getRangeSize() > MAX_NUMBERS || rules.getMaxAttempts() + 1 > MAX_ATTEMPTS) {
+            throw new IllegalArgumentException("analysis needs fixed hints, at most " + MAX_NUMBERS + " numbers and "
+                + (MAX_ATTEMPTS - 1) + " attempts");
+        }
+        this.rules = rules;
+        numbers = rules.getRangeSize();
+        long all = (1L << numbers) - 1;
+        below = new long[numbers];
+        above = new long[numbers];
+        for (int g = 0; g < numbers; g++) {
+            below[g] = (1L << g) - 1;
+            above[g] = all & ~below[g] & ~(1L << g);
+        }
+        guessOrder = IntStream.range(0, numbers).boxed()
+            .sorted((x, y) -> Integer.compare(Math.abs(2 * x - numbers + 1), Math.abs(2 * y - numbers + 1)))
+            .mapToInt(Integer::intValue).toArray();
+
+        int maxAttempts = rules.getMaxAttempts() + 1;
+        hintMasks = new long[maxAttempts][HINT_FLAGS + 1][][];
+        hintBranches = new String[maxAttempts][HINT_FLAGS + 1][][];
+        startMasks = new long[HINT_FLAGS + 1][];
+        startBranches = new String[HINT_FLAGS + 1][];
+        Hint hint = new Hint();
+        for (int flags = 0; flags <= HINT_FLAGS; flags++) {
+            if ((flags & ~HINT_FLAGS) != 0) {
+                continue;
+            }
+            List<String> branches = new ArrayList<>();
+            startMasks[flags] = partition(hint, -1, 0, flags, branches);
+            startBranches[flags] = branches.toArray(new String[0]);
+            for (int attempts = 1; attempts < maxAttempts; attempts++) {
+                hintMasks[attempts][flags] = new long[numbers][];
+                hintBranches[attempts][flags] = new String[numbers][];
+                for (int g = 0; g < numbers; g++) {
+                    branches.clear();
+                    hintMasks[attempts][flags][g] = partition(hint, rules.getMinNumber() + g, attempts, flags, branches);
+                    hintBranches[attempts][flags][g] = branches.toArray(new String[0]);
+                }
+            }
+        }
+    }
+
+    // Groups the targets by the hint text they produce
+    private long[] partition(Hint hint, int lastGuess, int attempts, int flags, List<String> branches) {
+        Map<String, Integer> classes = new HashMap<>();
+        List<Long> masks = new ArrayList<>();
+        for (int t = 0; t < numbers; t++) {
+            rules.describeHint(hint, rules.getMinNumber() + t, lastGuess, attempts, flags);
+            String text = rules.render(hint);
+            Integer index = classes.get(text);
+            if (index == null) {
+                index = masks.size();
+                classes.put(text, index);
+                masks.add(0L);
+                branches.add(branch(hint));
+            }
+            masks.set(index, masks.get(index) | 1L << t);
+        }
+        return masks.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // The hint branch a Hint belongs to: its type, plus the divisor or distance where that varies
+    private static String branch(Hint hint) {
+        switch (hint.getType()) {
+            case PRECISION:
+            case MULTIPLE:
+            case DIVISIBLE:
+                return hint.getType() + " " + hint.getValue();
+            case START:
+            case START_INSIGHT:
+            case CLARITY:
+                return hint.getType() + (hint.isPositive() ? " even" : " odd");
+            default:
+                return hint.getType().toString();
+        }
+    }
+
+    // Every combination of the enchantments that affect what the player learns, analysed in parallel;
+    // Time Warp only changes the clock and is left out
+    public List<Result> analyzeAll() {
+        return IntStream.range(0, 1 << CHOICES.length).parallel()
+            .mapToObj(bits -> {
+                Set<Enchantment> enchantments = EnumSet.noneOf(Enchantment.class);
+                for (int i = 0; i < CHOICES.length; i++) {
+                    if ((bits & 1 << i) != 0) {
+                        enchantments.add(CHOICES[i]);
+                    }
+                }
+                return analyze(enchantments);
+            })
+            .collect(Collectors.toList());
+    }
+
+    // Optimal play with the given enchantments active from the start of the game
+    public Result analyze(Set<Enchantment> enchantments) {
+        int flags = 0;
+        for (Enchantment enchantment : enchantments) {
+            flags |= enchantment.getMask();
+        }
+        int maxAttempts = rules.getMaxAttempts() + (enchantments.contains(Enchantment.SECOND_CHANCE) ? 1 : 0);
+        int hintFlags = flags & HINT_FLAGS;
+        ConcurrentHashMap<Long, Long> memo = memos.computeIfAbsent(maxAttempts, m -> new ConcurrentHashMap<>());
+        long wins = 0;
+        long attempts = 0;
+        long[] starts = startMasks[hintFlags];
+        for (long candidates : starts) {
+            long value = solve(memo, candidates, 0, hintFlags, maxAttempts);
+            wins += wins(value);
+            attempts += attempts(value);
+        }
+        Result result = new Result(enchantments.isEmpty() ? EnumSet.noneOf(Enchantment.class) : EnumSet.copyOf(enchantments), numbers, wins, attempts);
+        for (int c = 0; c < starts.length; c++) {
+            int size = Long.bitCount(starts[c]);
+            result.add(startBranches[hintFlags][c], (double) size / numbers, log2((double) numbers / size));
+            walk(memo, result, starts[c], 0, hintFlags, maxAttempts);
+        }
+        return result;
+    }
+
+    // Follows the optimal policy from one state and credits every hint on the way with its bits
+    private void walk(ConcurrentHashMap<Long, Long> memo, Result result, long candidates, int attempts, int flags, int maxAttempts) {
+        if (Long.bitCount(candidates) <= 1 || attempts + 1 >= maxAttempts) {
+            return;
+        }
+        int g = guess(solve(memo, candidates, attempts, flags, maxAttempts));
+        long rest = candidates & ~(1L << g);
+        int next = NumberGuessingLogic.afterHint(attempts + 1, flags);
+        long[] masks = hintMasks[attempts + 1][flags][g];
+        String[] branches = hintBranches[attempts + 1][flags][g];
+        for (long side : new long[] {rest & below[g], rest & above[g]}) {
+            int sideSize = Long.bitCount(side);
+            for (int c = 0; c < masks.length; c++) {
+                long child = side & masks[c];
+                if (child != 0) {
+                    int size = Long.bitCount(child);
+                    result.add(branches[c], (double) size / numbers, log2((double) sideSize / size));
+                    walk(memo, result, child, attempts + 1, next, maxAttempts);
+                }
+            }
+        }
+    }
+
+    // Best play with these candidates left after attempts guesses, as wins and attempts summed over
+    // the candidates plus the guess to make, packed by pack()
+    private long solve(ConcurrentHashMap<Long, Long> memo, long candidates, int attempts, int flags, int maxAttempts) {
+        int size = Long.bitCount(candidates);
+        if (size == 0) {
+            return 0;
+        }
+        if (size == 1 || attempts + 1 == maxAttempts) {
+            // One guess left or one number left: guess a candidate, the others are lost
+            return pack(1, (long) size * (attempts + 1), Long.numberOfTrailingZeros(candidates));
+        }
+        long key = candidates | (long) (attempts << 4 | flags) << MAX_NUMBERS;
+        Long known = memo.get(key);
+        if (known != null) {
+            return known;
+        }
+        int next = NumberGuessingLogic.afterHint(attempts + 1, flags);
+        long[][] masksByGuess = hintMasks[attempts + 1][flags];
+        long best = -1;
+        for (int g : guessOrder) {
+            long hit = candidates & (1L << g);
+            long wins = hit != 0 ? 1 : 0;
+            long total = hit != 0 ? attempts + 1 : 0;
+            long rest = candidates & ~hit;
+            for (long side : new long[] {rest & below[g], rest & above[g]}) {
+                for (int c = 0; side != 0 && c < masksByGuess[g].length; c++) {
+                    long child = side & masksByGuess[g][c];
+                    if (child != 0) {
+                        long value = solve(memo, child, attempts + 1, next, maxAttempts);
+                        wins += wins(value);
+                        total += attempts(value);
+                    }
+                }
+            }
+            if (best < 0 || wins > wins(best) || (wins == wins(best) && total < attempts(best))) {
+                best = pack(wins, total, g);
+                if (wins == size && total == (long) size * (attempts + 2) - 1) {
+                    break; // Everything won, and all but the guessed number on the very next attempt
+                }
+            }
+        }
+        memo.putIfAbsent(key, best);
+        return best;
+    }
+
+    private static long pack(long wins, long attempts, int guess) {
+        return wins << 40 | attempts << 8 | guess;
+    }
+
+    private static long wins(long value) {
+        return value >>> 40;
+    }
+
+    private static long attempts(long value) {
+        return value >>> 8 & 0xFFFFFFFFL;
+    }
+
+    private static int guess(long value) {
+        return (int) (value & 0xFF);
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+
+    public static void main(String[] args) throws IOException {
+        GameRules rules = args.length > 0 ? GameRules.load(Path.of(args[0])) : GameRules.defaults();
+        long start = System.nanoTime();
+        HintEntropyAnalyzer analyzer = new HintEntropyAnalyzer(rules);
+        List<Result> results = analyzer.analyzeAll();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (Result result : results) {
+            System.out.print(result);
+        }
+        int states = analyzer.memos.values().stream().mapToInt(Map::size).sum();
+        System.out.printf("%,d states in %.2f s on %d threads%n", states, seconds, Runtime.getRuntime().availableProcessors());
+    }
+}
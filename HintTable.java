@@ -0,0 +1,110 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// Every hint a game under one GameRules can produce, built once when the rules are created.
+// A lookup is a single array read, so serving a hint allocates nothing. Only built for ranges of
+// up to MAX_NUMBERS numbers, since the table grows with the square of the range.
+final class HintTable {
+    static final int MAX_NUMBERS = 64;
+
+    private static final int PHASES = 5; // attempts 0, 1, early, mid, final
+    private static final int FLAGS = 8; // insight, precision, clarity
+
+    // Only these enchantments change the hint text; the others are masked out of the index
+    private static final Enchantment[] HINT_ENCHANTMENTS = {Enchantment.INSIGHT, Enchantment.PRECISION, Enchantment.CLARITY};
+    private static final int[] FLAG_INDEX = new int[1 << Enchantment.values().length];
+    private static final int[] INDEX_FLAGS = new int[FLAGS];
+
+    static {
+        for (int flags = 0; flags < FLAG_INDEX.length; flags++) {
+            int index = 0;
+            for (int bit = 0; bit < HINT_ENCHANTMENTS.length; bit++) {
+                if ((flags & HINT_ENCHANTMENTS[bit].getMask()) != 0) {
+                    index |= 1 << bit;
+                }
+            }
+            FLAG_INDEX[flags] = index;
+            INDEX_FLAGS[index] = flags & (Enchantment.INSIGHT.getMask() | Enchantment.PRECISION.getMask() | Enchantment.CLARITY.getMask());
+        }
+    }
+
+    private final GameRules rules;
+    private final int minNumber;
+    private final int maxNumber;
+    private final int guesses; // lastGuess -1 (no guess yet) plus every number in the range
+    private final int[] phaseAttempts; // Representative attempt count for each phase, used when filling the table
+    private final String[] hints;
+
+    HintTable(GameRules rules) {
+        this.rules = rules;
+        minNumber = rules.getMinNumber();
+        maxNumber = rules.getMaxNumber();
+        guesses = rules.getRangeSize() + 1;
+        phaseAttempts = new int[] {0, 1, rules.getEarlyAttempts(), rules.getEarlyAttempts() + 1, rules.getMidAttempts() + 1};
+        hints = build();
+    }
+
+    // Returns null when the state lies outside the table, e.g. a guess that was never range-checked
+    String lookup(int targetNumber, int lastGuess, int attempts, int enchantmentFlags) {
+        if (targetNumber < minNumber || targetNumber > maxNumber
+                || (lastGuess != -1 && (lastGuess < minNumber || lastGuess > maxNumber)) || attempts < 0) {
+            return null;
+        }
+        return hints[index(targetNumber, lastGuess, phase(attempts), FLAG_INDEX[enchantmentFlags & (FLAG_INDEX.length - 1)])];
+    }
+
+    private int phase(int attempts) {
+        if (attempts <= 1) {
+            return attempts; // The first attempt is separate because Clarity applies there
+        } else if (attempts <= rules.getEarlyAttempts()) {
+            return 2;
+        }
+        return attempts <= rules.getMidAttempts() ? 3 : 4;
+    }
+
+    private int index(int targetNumber, int lastGuess, int phase, int flags) {
+        int target = targetNumber - minNumber;
+        int guess = lastGuess == -1 ? 0 : lastGuess - minNumber + 1;
+        return ((target * guesses + guess) * PHASES + phase) * FLAGS + flags;
+    }
+
+    private String[] build() {
+        String[] table = new String[(guesses - 1) * guesses * PHASES * FLAGS];
+        Map<String, String> interned = new HashMap<>();
+        for (int target = minNumber; target <= maxNumber; target++) {
+            for (int slot = 0; slot < guesses; slot++) {
+                int guess = slot == 0 ? -1 : minNumber + slot - 1;
+                for (int phase = 0; phase < PHASES; phase++) {
+                    for (int flags = 0; flags < FLAGS; flags++) {
+                        String hint = rules.buildHint(target, guess, phaseAttempts[phase], INDEX_FLAGS[flags]);
+                        table[index(target, guess, phase, flags)] = interned.computeIfAbsent(hint, h -> h);
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    // Exhaustive check of every table entry against the branch logic, for attempts past the final phase too.
+    // Returns the number of states compared; throws on the first mismatch.
+    long verify(int maxAttempts) {
+        long compared = 0;
+        for (int target = minNumber; target <= maxNumber; target++) {
+            for (int slot = 0; slot < guesses; slot++) {
+                int guess = slot == 0 ? -1 : minNumber + slot - 1;
+                for (int attempts = 0; attempts <= maxAttempts + 1; attempts++) {
+                    for (int flags = 0; flags < FLAG_INDEX.length; flags++) {
+                        String expected = rules.buildHint(target, guess, attempts, flags);
+                        String actual = lookup(target, guess, attempts, flags);
+                        if (!expected.equals(actual)) {
+                            throw new IllegalStateException("Hint table mismatch for target=" + target + " lastGuess=" + guess
+                                + " attempts=" + attempts + " flags=" + flags + ": expected '" + expected + "' but was '" + actual + "'");
+                        }
+                        compared++;
+                    }
+                }
+            }
+        }
+        return compared;
+    }
+}
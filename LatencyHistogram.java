@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+// Log-linear latency histogram in the style of HdrHistogram: each power of two is split into
+// 16 linear sub-buckets, so any recorded value is reported within about 6% using a fixed 8 KB
+// array and no allocation per record. Not thread-safe; record per thread and merge with add().
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    private final long[] counts = new long[64 * HALF];
+    private long totalCount;
+    private long totalValue;
+    private long maxValue;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        totalValue += value;
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        maxValue = 0;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return maxValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+
+    // Highest value in the bucket holding the given percentile (0-100), capped at the recorded maximum
+    public long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    // One-line summary with values divided by unitDivisor, e.g. 1000 to print nanoseconds as microseconds
+    public String summary(double unitDivisor, String unit) {
+        return String.format("count %,d  mean %.1f  p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f %s",
+            totalCount, getMean() / unitDivisor,
+            valueAtPercentile(50) / unitDivisor, valueAtPercentile(90) / unitDivisor,
+            valueAtPercentile(99) / unitDivisor, valueAtPercentile(99.9) / unitDivisor,
+            maxValue / unitDivisor, unit);
+    }
+
+    // Values below SUB_BUCKETS map one to one; above that the top SUB_BUCKET_BITS bits pick the bucket
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long top = index % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Player rankings built from finished games: total enchantment points earned, and fewest attempts in
+// a won game. Each ranking keeps its standings in a concurrent skip list, so top-K is a walk from the
+// head, and a Fenwick tree of player counts per score, so rank and percentile are one prefix sum.
+// Updates for one player are serialised on that player's stats; reads take no locks and see each
+// ranking as of some moment during the read, so while a player moves they may briefly be listed at
+// both the old and the new score. Scores above a ranking's bucket limit share its top bucket for
+// rank and percentile purposes; top-K stays exact.
+public class Leaderboard {
+    private static final int POINTS_BUCKETS = 1 << 20;
+    private static final int ATTEMPTS_BUCKETS = 1 << 10;
+
+    private final ConcurrentHashMap<Long, PlayerStats> players = new ConcurrentHashMap<>();
+    private final Ranking byPoints = new Ranking(POINTS_BUCKETS, true);
+    private final Ranking byAttempts = new Ranking(ATTEMPTS_BUCKETS, false);
+
+    // One player's place in a ranking
+    public static final class Standing {
+        private final long playerId;
+        private final long score;
+
+        Standing(long playerId, long score) {
+            this.playerId = playerId;
+            this.score = score;
+        }
+
+        public long getPlayerId() {
+            return playerId;
+        }
+
+        public long getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return playerId + ":" + score;
+        }
+    }
+
+    private static final class PlayerStats {
+        volatile long points;
+        volatile int bestAttempts; // 0 until the first win
+        volatile long games;
+        volatile long wins;
+        Standing pointsStanding;
+        Standing attemptsStanding;
+    }
+
+    // Standings ordered best first, ties by player id; counts per score bucket for ranks
+    private static final class Ranking {
+        final ConcurrentSkipListSet<Standing> standings;
+        final Fenwick counts;
+        final boolean higherIsBetter;
+
+        Ranking(int buckets, boolean higherIsBetter) {
+            Comparator<Standing> byScore = Comparator.comparingLong(Standing::getScore);
+            standings = new ConcurrentSkipListSet<>((higherIsBetter ? byScore.reversed() : byScore)
+                .thenComparingLong(Standing::getPlayerId));
+            counts = new Fenwick(buckets);
+            this.higherIsBetter = higherIsBetter;
+        }
+
+        // The new standing goes in before the old one comes out, so a reader never misses the player
+        Standing move(Standing old, long playerId, long score) {
+            Standing moved = new Standing(playerId, score);
+            standings.add(moved);
+            counts.add(bucket(score), 1);
+            if (old != null) {
+                standings.remove(old);
+                counts.add(bucket(old.score), -1);
+            }
+            return moved;
+        }
+
+        List<Standing> top(int k) {
+            List<Standing> top = new ArrayList<>(Math.min(k, 1024));
+            for (Standing standing : standings) {
+                if (top.size() == k) {
+                    break;
+                }
+                top.add(standing);
+            }
+            return top;
+        }
+
+        // Players with a strictly better score
+        long better(long score) {
+            int bucket = bucket(score);
+            return higherIsBetter ? counts.total() - counts.prefix(bucket) : counts.prefix(bucket - 1);
+        }
+
+        // Players with a strictly worse score
+        long worse(long score) {
+            int bucket = bucket(score);
+            return higherIsBetter ? counts.prefix(bucket - 1) : counts.total() - counts.prefix(bucket);
+        }
+
+        int bucket(long score) {
+            return (int) Math.max(0, Math.min(score, counts.size() - 1));
+        }
+    }
+
+    // Binary indexed tree of counts. Updates are atomic adds on log2(n) cells and commute with each
+    // other, so concurrent writers need no lock; a concurrent prefix sum may be off by in-flight moves.
+    static final class Fenwick {
+        private final AtomicLongArray tree;
+
+        Fenwick(int size) {
+            tree = new AtomicLongArray(size + 1);
+        }
+
+        int size() {
+            return tree.length() - 1;
+        }
+
+        void add(int index, long delta) {
+            for (int i = index + 1; i < tree.length(); i += i & -i) {
+                tree.getAndAdd(i, delta);
+            }
+        }
+
+        // Sum of counts at indexes 0..index; 0 for a negative index
+        long prefix(int index) {
+            long sum = 0;
+            for (int i = Math.min(index + 1, tree.length() - 1); i > 0; i -= i & -i) {
+                sum += tree.get(i);
+            }
+            return sum;
+        }
+
+        long total() {
+            return prefix(tree.length() - 2);
+        }
+    }
+
+    // A finished game: won or not, the attempts used and the points it earned
+    public void recordGame(long playerId, boolean won, int attempts, int pointsEarned) {
+        PlayerStats stats = players.computeIfAbsent(playerId, id -> new PlayerStats());
+        synchronized (stats) {
+            stats.games++;
+            if (stats.pointsStanding == null || pointsEarned != 0) {
+                stats.points += pointsEarned;
+                stats.pointsStanding = byPoints.move(stats.pointsStanding, playerId, stats.points);
+            }
+            if (won) {
+                stats.wins++;
+                if (stats.bestAttempts == 0 || attempts < stats.bestAttempts) {
+                    stats.bestAttempts = attempts;
+                    stats.attemptsStanding = byAttempts.move(stats.attemptsStanding, playerId, attempts);
+                }
+            }
+        }
+    }
+
+    public List<Standing> topByPoints(int k) {
+        return byPoints.top(k);
+    }
+
+    // Best single game, fewest attempts first; only players with a win are ranked
+    public List<Standing> topByAttempts(int k) {
+        return byAttempts.top(k);
+    }
+
+    public long getPlayerCount() {
+        return players.size();
+    }
+
+    public long getPoints(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null ? 0 : stats.points;
+    }
+
+    // Fewest attempts in a won game, 0 if the player has not won
+    public int getBestAttempts(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null ? 0 : stats.bestAttempts;
+    }
+
+    public long getGames(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null ? 0 : stats.games;
+    }
+
+    public long getWins(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null ? 0 : stats.wins;
+    }
+
+    // 1 for the leader; players with equal points share a rank. 0 for an unknown player.
+    public long getPointsRank(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null ? 0 : byPoints.better(stats.points) + 1;
+    }
+
+    // Share of ranked players with fewer points, from 0 to 1
+    public double getPointsPercentile(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null ? 0 : share(byPoints, byPoints.worse(stats.points));
+    }
+
+    // 0 for a player without a win
+    public long getAttemptsRank(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null || stats.bestAttempts == 0 ? 0 : byAttempts.better(stats.bestAttempts) + 1;
+    }
+
+    // Share of players with a win whose best game took more attempts, from 0 to 1
+    public double getAttemptsPercentile(long playerId) {
+        PlayerStats stats = players.get(playerId);
+        return stats == null || stats.bestAttempts == 0 ? 0 : share(byAttempts, byAttempts.worse(stats.bestAttempts));
+    }
+
+    private static double share(Ranking ranking, long count) {
+        long total = ranking.counts.total();
+        return total == 0 ? 0 : (double) count / total;
+    }
+}
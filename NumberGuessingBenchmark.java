@@ -0,0 +1,693 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Baseline micro-benchmarks for the game hot paths. Run with:
+//   java NumberGuessingBenchmark [latency] [throughput] [compact] [reset] [frames] [journal] [metrics] [candidates] [batch] [leaderboard] [input] [codec]
+// With no arguments every section runs.
+public class NumberGuessingBenchmark {
+    private static final String[] ENCHANTMENTS = {"Insight", "Clarity", "Time Warp", "Precision", "Second Chance"};
+    private static final int WARMUP_ITERATIONS = 2_000_000;
+    private static final int MEASURED_ITERATIONS = 5_000_000;
+    private static final long THROUGHPUT_MILLIS = 2_000;
+
+    // Results are folded into this field so the JIT cannot discard the measured work
+    private static volatile long sink;
+
+    private interface Op {
+        long run(int i);
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        List<String> sections = List.of(args);
+        boolean all = sections.isEmpty();
+        if (all || sections.contains("latency")) {
+            runLatency();
+        }
+        if (all || sections.contains("throughput")) {
+            runThroughput();
+        }
+        if (all || sections.contains("compact")) {
+            runCompact();
+        }
+        if (all || sections.contains("reset")) {
+            runReset();
+        }
+        if (all || sections.contains("frames")) {
+            runFrames();
+        }
+        if (all || sections.contains("journal")) {
+            runJournal();
+        }
+        if (all || sections.contains("candidates")) {
+            runCandidates();
+        }
+        if (all || sections.contains("batch")) {
+            runBatch();
+        }
+        if (all || sections.contains("leaderboard")) {
+            runLeaderboard();
+        }
+        if (all || sections.contains("input")) {
+            runInput();
+        }
+        if (all || sections.contains("codec")) {
+            runCodec();
+        }
+        if (all || sections.contains("metrics")) {
+            runMetrics();
+        }
+    }
+
+    private static void runLatency() {
+        System.out.println("== Single-thread latency ==");
+
+        NumberGuessingLogic guessGame = new NumberGuessingLogic();
+        measure("checkGuess", i -> {
+            if (guessGame.getAttempts() >= guessGame.getMaxAttempts()) {
+                guessGame.resetGame();
+            }
+            return guessGame.checkGuess(i % 51).length();
+        });
+
+        // One prepared game per hint phase; Precision is never active so getHint has no side effects
+        NumberGuessingLogic[] hintGames = new NumberGuessingLogic[6];
+        for (int g = 0; g < hintGames.length; g++) {
+            hintGames[g] = new NumberGuessingLogic();
+            hintGames[g].addEnchantmentPoints(5);
+            hintGames[g].activateEnchantment("Insight");
+            for (int a = 0; a < g; a++) {
+                hintGames[g].checkGuess(a * 7);
+            }
+        }
+        measure("getHint", i -> hintGames[i % hintGames.length].getHint().length());
+        System.out.printf("(hint table verified against branch logic for %,d states)%n", GameRules.defaults().getHintTable().verify(6));
+        for (NumberGuessingLogic hintGame : hintGames) {
+            hintGame.setPrecomputedHints(true);
+        }
+        measure("getHint (precomputed)", i -> hintGames[i % hintGames.length].getHint().length());
+        measure("describeHint (no text)", i -> hintGames[i % hintGames.length].describeHint().getValue());
+
+        NumberGuessingLogic rejectGame = new NumberGuessingLogic();
+        measure("activateEnchantment (rejected)", i -> rejectGame.activateEnchantment(ENCHANTMENTS[i % ENCHANTMENTS.length]) ? 1 : 0);
+
+        NumberGuessingLogic acceptGame = new NumberGuessingLogic();
+        measure("activateEnchantment (accepted)", i -> {
+            int slot = i % ENCHANTMENTS.length;
+            if (slot == 0) {
+                acceptGame.resetGame();
+                acceptGame.addEnchantmentPoints(30);
+            }
+            return acceptGame.activateEnchantment(ENCHANTMENTS[slot]) ? 1 : 0;
+        });
+
+        Enchantment[] typed = Enchantment.values();
+        measure("activateEnchantment (typed)", i -> {
+            int slot = i % typed.length;
+            if (slot == 0) {
+                acceptGame.resetGame();
+                acceptGame.addEnchantmentPoints(30);
+            }
+            return acceptGame.activateEnchantment(typed[slot]) ? 1 : 0;
+        });
+
+        NumberGuessingLogic fullGame = new NumberGuessingLogic();
+        measure("full game", i -> playGame(fullGame));
+    }
+
+    private static void runThroughput() throws InterruptedException {
+        System.out.println("== Multi-thread throughput (full games via GameSessionManager) ==");
+        double baseline = 0;
+        for (int threads : threadCounts()) {
+            GameSessionManager manager = new GameSessionManager(Long.MAX_VALUE);
+            double gamesPerSecond = runThreads(threads, () -> {
+                long[] ids = new long[64];
+                for (int s = 0; s < ids.length; s++) {
+                    ids[s] = manager.createSession();
+                }
+                int[] next = {0};
+                return () -> playSession(manager, ids[next[0]++ & (ids.length - 1)]);
+            });
+            if (threads == 1) {
+                baseline = gamesPerSecond;
+            }
+            System.out.printf("%3d threads: %,14.0f games/s  (x%.2f)%n", threads, gamesPerSecond, gamesPerSecond / baseline);
+        }
+    }
+
+    private static List<Integer> threadCounts() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+        return threadCounts;
+    }
+
+    private static void runReset() throws InterruptedException {
+        System.out.println("== Multi-thread resetGame throughput by target source ==");
+        String[] names = {"Math.random", "ThreadLocalRandom", "SplittableRandom"};
+        TargetSource[] sources = {bound -> (int) (Math.random() * bound), TargetSource.threadLocal(), TargetSource.splittable(42)};
+        for (int threads : threadCounts()) {
+            for (int s = 0; s < sources.length; s++) {
+                TargetSource source = sources[s];
+                double resetsPerSecond = runThreads(threads, () -> {
+                    NumberGuessingLogic game = new NumberGuessingLogic(source);
+                    return () -> {
+                        game.resetGame();
+                        sink += game.getTargetNumber();
+                    };
+                });
+                System.out.printf("%3d threads %-18s %,16.0f resets/s%n", threads, names[s], resetsPerSecond);
+            }
+        }
+    }
+
+    // Runs the per-thread task created by each factory call in a tight loop on every thread for
+    // THROUGHPUT_MILLIS and returns the combined rate
+    private static double runThreads(int threads, Supplier<Runnable> perThread) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                Runnable task = perThread.get();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                while (running.get()) {
+                    task.run();
+                    count++;
+                }
+                counts[index] = count;
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        Thread.sleep(THROUGHPUT_MILLIS);
+        running.set(false);
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers.get(t).join();
+            total += counts[t];
+        }
+        return total * 1000.0 / THROUGHPUT_MILLIS;
+    }
+
+    private static void runCompact() {
+        System.out.println("== Compact session store ==");
+        int games = 4_000_000;
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        CompactSessionStore store = new CompactSessionStore(games);
+        for (int i = 0; i < games; i++) {
+            store.allocate();
+        }
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%,d parked games: %,d bytes of heap (%.1f B/game)%n", games, heapAfter - heapBefore,
+            (double) (heapAfter - heapBefore) / games);
+
+        CompactSessionStore.View view = store.view();
+        measure("full game (compact view)", i -> {
+            view.moveTo(i % games);
+            view.resetGame();
+            long checksum = view.getHint().length();
+            int low = 0;
+            int high = 50;
+            while (true) {
+                int guess = (low + high) >>> 1;
+                String result = view.checkGuess(guess);
+                if (result.equals("correct") || result.equals("Game over")) {
+                    return checksum + view.getAttempts();
+                }
+                checksum += view.getHint().length();
+                if (result.equals("Too low!")) {
+                    low = guess + 1;
+                } else {
+                    high = guess - 1;
+                }
+            }
+        });
+    }
+
+    // Candidate-tracking hints on ranges from the original 51 numbers up to the full int range. Each
+    // game guesses the middle of the remaining candidates and asks for a hint after every guess, so
+    // ns/guess staying flat as the range grows is the bounded per-guess cost.
+    private static void runCandidates() {
+        System.out.println("== Candidate hints by range size ==");
+        for (int max : new int[] {50, 1_000_000, Integer.MAX_VALUE - 1}) {
+            Properties properties = new Properties();
+            properties.setProperty("range.max", Integer.toString(max));
+            properties.setProperty("attempts.max", "40");
+            properties.setProperty("hint.candidates", "true");
+            GameRules rules = GameRules.fromProperties(properties);
+            NumberGuessingLogic game = new NumberGuessingLogic(TargetSource.threadLocal(), () -> rules);
+            long[] guesses = new long[1];
+            measure("full game, 0-" + max, i -> {
+                game.resetGame();
+                long checksum = game.getHint().length();
+                while (true) {
+                    int low = game.getCandidateLow();
+                    String result = game.checkGuess(low + (game.getCandidateHigh() - low) / 2);
+                    if (result.equals("correct") || result.equals("Game over")) {
+                        guesses[0] += game.getAttempts();
+                        return checksum + game.getAttempts();
+                    }
+                    checksum += game.getHint().length();
+                }
+            });
+            System.out.printf("  %.1f guesses per game%n", (double) guesses[0] / (WARMUP_ITERATIONS + MEASURED_ITERATIONS));
+        }
+    }
+
+    // Guesses one call at a time against guesses in batches, through the session manager and the
+    // compact store. Batches hold runs of four guesses per game, the shape of bot and replay traffic.
+    private static void runBatch() {
+        System.out.println("== Batch guesses ==");
+        int batch = 1_024;
+        int games = 4_096;
+        int runLength = 4;
+        int rounds = 4_000;
+        SplittableRandom random = new SplittableRandom(17);
+        GameSessionManager manager = new GameSessionManager(TimeUnit.MINUTES.toMillis(10));
+        long[] ids = new long[games];
+        for (int g = 0; g < games; g++) {
+            ids[g] = manager.createSession();
+        }
+        long[] sessionIds = new long[batch];
+        int[] slots = new int[batch];
+        int[] guesses = new int[batch];
+        for (int i = 0; i < batch; i += runLength) {
+            int game = random.nextInt(games);
+            for (int r = i; r < Math.min(batch, i + runLength); r++) {
+                sessionIds[r] = ids[game];
+                slots[r] = game;
+                guesses[r] = random.nextInt(51);
+            }
+        }
+        byte[] results = new byte[batch];
+        for (int pass = 0; pass < 2; pass++) {
+            long acc = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < batch; i++) {
+                    acc += manager.guess(sessionIds[i], guesses[i]).ordinal();
+                }
+            }
+            long single = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                manager.checkGuesses(sessionIds, guesses, results, batch);
+                acc += results[round % batch];
+            }
+            long batched = System.nanoTime() - start;
+            sink += acc;
+            if (pass == 1) {
+                System.out.printf("%-32s %10.2f ns/guess%n", "sessions, one call each", (double) single / rounds / batch);
+                System.out.printf("%-32s %10.2f ns/guess%n", "sessions, batches of " + batch, (double) batched / rounds / batch);
+            }
+        }
+
+        CompactSessionStore store = new CompactSessionStore(games);
+        for (int g = 0; g < games; g++) {
+            store.allocate();
+        }
+        CompactSessionStore.View view = store.view();
+        IntBuffer pairs = IntBuffer.allocate(2 * batch);
+        for (int i = 0; i < batch; i++) {
+            pairs.put(slots[i]).put(guesses[i]);
+        }
+        ByteBuffer resultBuffer = ByteBuffer.allocate(batch);
+        for (int pass = 0; pass < 2; pass++) {
+            long acc = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < batch; i++) {
+                    acc += view.moveTo(slots[i]).checkGuess(guesses[i]).length();
+                }
+            }
+            long single = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                pairs.clear();
+                resultBuffer.clear();
+                acc += store.checkGuesses(pairs, resultBuffer);
+            }
+            long batched = System.nanoTime() - start;
+            sink += acc;
+            if (pass == 1) {
+                System.out.printf("%-32s %10.2f ns/guess%n", "compact view, one call each", (double) single / rounds / batch);
+                System.out.printf("%-32s %10.2f ns/guess%n", "compact, IntBuffer batches", (double) batched / rounds / batch);
+            }
+        }
+    }
+
+    // Loads two million players, then keeps writer threads recording games while the main thread times
+    // top-K and rank queries against them. Reads staying flat under writes is the point of the structure.
+    private static void runLeaderboard() throws InterruptedException {
+        System.out.println("== Leaderboard ==");
+        int players = 2_000_000;
+        int writers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        Leaderboard leaderboard = new Leaderboard();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        SplittableRandom loader = new SplittableRandom(23);
+        for (long p = 0; p < players; p++) {
+            boolean won = loader.nextInt(3) != 0;
+            leaderboard.recordGame(p, won, 1 + loader.nextInt(10), won ? 10 * loader.nextInt(1, 200) : 0);
+        }
+        long loadNanos = System.nanoTime() - start;
+        System.out.printf("%-32s %10.0f ns/game, ~%d bytes/player%n", "load " + players + " players",
+            (double) loadNanos / players, (usedHeap() - heapBefore) / players);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] written = new long[writers];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            int index = t;
+            Thread thread = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(index);
+                long count = 0;
+                while (running.get()) {
+                    boolean won = random.nextBoolean();
+                    leaderboard.recordGame(random.nextLong(players), won, 1 + random.nextInt(10), won ? 10 : 0);
+                    count++;
+                }
+                written[index] = count;
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(29);
+        measure("topByPoints(10)", i -> leaderboard.topByPoints(10).get(9).getScore());
+        measure("topByAttempts(100)", i -> leaderboard.topByAttempts(100).size());
+        measure("getPointsRank", i -> leaderboard.getPointsRank(random.nextLong(players)));
+        measure("getAttemptsPercentile", i -> (long) (leaderboard.getAttemptsPercentile(random.nextLong(players)) * 100));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf("%-32s %10.0f games/s across %d threads%n", "recordGame while reading",
+            Arrays.stream(written).sum() / seconds, writers);
+        System.out.println("  leader " + leaderboard.topByPoints(1) + ", " + leaderboard.getPlayerCount() + " players");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Renders the animated game panel offscreen frame by frame, the way the shared animation clock
+    // drives it, and reports the distribution of frame times
+    private static void runFrames() {
+        System.out.println("== TexturedPanel frame time (500x450, offscreen) ==");
+        TexturedPanel.prepareTexture().join(); // Measure with the real texture, not the placeholder gradient
+        for (int symbols : new int[] {35, 1_000, 5_000}) {
+            TexturedPanel panel = new TexturedPanel(true, symbols);
+            panel.setSize(500, 450);
+            BufferedImage frame = new BufferedImage(500, 450, BufferedImage.TYPE_INT_RGB);
+            int warmup = 300;
+            int frames = 1_000;
+            long[] nanos = new long[frames];
+            for (int i = 0; i < warmup + frames; i++) {
+                Graphics2D g = frame.createGraphics();
+                long start = System.nanoTime();
+                panel.advanceFrame();
+                panel.paint(g);
+                long elapsed = System.nanoTime() - start;
+                g.dispose();
+                if (i >= warmup) {
+                    nanos[i - warmup] = elapsed;
+                }
+            }
+            Arrays.sort(nanos);
+            long total = 0;
+            for (long n : nanos) {
+                total += n;
+            }
+            System.out.printf("%,6d symbols: mean %.3f ms  p50 %.3f ms  p99 %.3f ms  max %.3f ms%n", symbols,
+                total / 1e6 / frames, nanos[frames / 2] / 1e6, nanos[frames * 99 / 100] / 1e6, nanos[frames - 1] / 1e6);
+        }
+    }
+
+    // The GUI's guess parsing against the trim + Integer.parseInt + catch it replaced, on typed input
+    // where one entry in four is a typo
+    private static void runInput() {
+        System.out.println("== Guess input parsing ==");
+        String[] inputs = {"50", " 7 ", "100", "5o", "63", "", "abc", "12", "99", "1e2", "42 ", "3", "88", "-", "25", "71"};
+        measure("parseGuess", i -> NumberGuessingGui.parseGuess(inputs[i & 15]));
+        measure("trim + parseInt + catch", i -> {
+            String input = inputs[i & 15].trim();
+            if (input.isEmpty()) {
+                return NumberGuessingGui.NO_INPUT;
+            }
+            try {
+                return Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                return NumberGuessingGui.NOT_A_NUMBER;
+            }
+        });
+    }
+
+    // GameStateCodec encode and decode of a mid-game state into and out of a direct buffer, for the
+    // default rules and for candidate hints over a million numbers, plus one event
+    private static void runCodec() {
+        System.out.println("== Game state codec ==");
+        Properties wide = new Properties();
+        wide.setProperty("range.max", "1000000");
+        GameRules candidateRules = GameRules.fromProperties(wide);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(GameStateCodec.MAX_STATE_BYTES);
+        for (GameRules rules : new GameRules[] {GameRules.defaults(), candidateRules}) {
+            NumberGuessingLogic game = new NumberGuessingLogic(TargetSource.threadLocal(), () -> rules);
+            game.addEnchantmentPoints(12);
+            game.activateEnchantment(Enchantment.INSIGHT);
+            game.describeHint();
+            game.guess(rules.getMinNumber() + rules.getRangeSize() / 3);
+            game.describeHint();
+            NumberGuessingLogic copy = new NumberGuessingLogic(TargetSource.threadLocal(), () -> rules);
+            String label = rules.isCandidateHints() ? "candidates" : "default";
+            measure("encode state (" + label + ")", i -> {
+                buffer.clear();
+                GameStateCodec.encodeState(game, buffer);
+                return buffer.position();
+            });
+            System.out.println("  " + buffer.position() + " bytes");
+            measure("decode state (" + label + ")", i -> {
+                buffer.rewind();
+                GameStateCodec.decodeState(buffer, copy);
+                return copy.getAttempts();
+            });
+        }
+        GameEvent.Listener consumer = (event, value) -> sink += value;
+        measure("encode + decode event", i -> {
+            buffer.clear();
+            GameStateCodec.encodeEvent(GameEvent.GUESS, i & 0xFFFF, buffer);
+            buffer.flip();
+            GameStateCodec.decodeEvent(buffer, consumer);
+            return buffer.position();
+        });
+    }
+
+    // Cost of recording one operation, the way GameSessionManager wraps each call, then the text dump
+    // of everything the sections above recorded into the shared instance
+    private static void runMetrics() {
+        System.out.println("== Metrics ==");
+        GameMetrics metrics = new GameMetrics();
+        measure("start + record", i -> {
+            long start = metrics.start();
+            metrics.record(GameMetrics.Operation.CHECK_GUESS, start);
+            return start;
+        });
+        measure("recordOutcome", i -> {
+            metrics.recordOutcome(GameMetrics.Outcome.WIN);
+            return i;
+        });
+        GameSessionManager manager = new GameSessionManager(Long.MAX_VALUE);
+        long id = manager.createSession();
+        measure("full game (instrumented session)", i -> {
+            playSession(manager, id);
+            return i;
+        });
+        checkOutcomes();
+        System.out.print(GameMetrics.shared().dump());
+    }
+
+    // Every game that ends must be counted once, as a win, a loss or a timeout: games played out must
+    // not time out as well once their deadline passes, and abandoned ones must time out exactly once
+    private static void checkOutcomes() {
+        GameMetrics shared = GameMetrics.shared();
+        long before = countOutcomes(shared);
+        GameSessionManager manager = new GameSessionManager(Long.MAX_VALUE);
+        int played = 1_000;
+        int abandoned = 100;
+        for (int i = 0; i < played; i++) {
+            playSession(manager, manager.createSession());
+        }
+        for (int i = 0; i < abandoned; i++) {
+            manager.createSession();
+        }
+        long later = System.currentTimeMillis() + 3_600_000; // Well past every deadline
+        int expired = manager.expireDeadlines(later).size() + manager.expireDeadlines(later).size();
+        long counted = countOutcomes(shared) - before;
+        boolean ok = expired == abandoned && counted == played + abandoned;
+        System.out.printf("outcomes: %,d games ended, %,d counted, %,d timed out: %s%n", played + abandoned, counted, expired,
+            ok ? "OK" : "FAIL");
+    }
+
+    private static long countOutcomes(GameMetrics metrics) {
+        long total = 0;
+        for (GameMetrics.Outcome outcome : GameMetrics.Outcome.values()) {
+            total += metrics.getOutcomes(outcome);
+        }
+        return total;
+    }
+
+    // Journals a million sessions playing one game each, then times replay from the bare event log and
+    // again after a snapshot, checking both against the live sessions
+    private static void runJournal() throws IOException {
+        System.out.println("== Game journal ==");
+        int sessionCount = 1_000_000;
+        Path directory = Files.createTempDirectory("game-journal");
+        try (GameJournal journal = new GameJournal(directory, 100)) {
+            GameSessionManager manager = new GameSessionManager(Long.MAX_VALUE, null, journal);
+            long[] ids = new long[sessionCount];
+            long start = System.nanoTime();
+            for (int i = 0; i < sessionCount; i++) {
+                ids[i] = manager.createSession();
+                playSession(manager, ids[i]);
+            }
+            journal.flush();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%,d sessions played and journaled in %.2f s: %,d events, %,.0f events/s%n",
+                sessionCount, seconds, journal.position(), journal.position() / seconds);
+
+            replayAndCheck("replay from event log", journal, manager, ids);
+            start = System.nanoTime();
+            manager.writeSnapshot();
+            System.out.printf("snapshot of %,d sessions: %.2f s%n", sessionCount, (System.nanoTime() - start) / 1e9);
+            for (int i = 0; i < sessionCount; i += 2) {
+                playSession(manager, ids[i]); // Half the sessions move on past the snapshot
+            }
+            replayAndCheck("replay from snapshot + tail", journal, manager, ids);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void replayAndCheck(String name, GameJournal journal, GameSessionManager manager, long[] ids) throws IOException {
+        long start = System.nanoTime();
+        Map<Long, NumberGuessingLogic> games = journal.replay();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int mismatches = 0;
+        for (long id : ids) {
+            NumberGuessingLogic game = games.get(id);
+            if (game == null || game.getTargetNumber() != manager.getTargetNumber(id) || game.getAttempts() != manager.getAttempts(id)
+                    || game.getEnchantmentPoints() != manager.getEnchantmentPoints(id)) {
+                mismatches++;
+            }
+        }
+        System.out.printf("%-28s %,d sessions in %.2f s, %d mismatches%n", name + ":", games.size(), seconds, mismatches);
+    }
+
+    // Binary search driven by the Too low/Too high feedback, reading the hint after every miss like the GUI does
+    private static long playGame(NumberGuessingLogic game) {
+        game.resetGame();
+        long checksum = game.getHint().length();
+        int low = 0;
+        int high = 50;
+        while (true) {
+            int guess = (low + high) >>> 1;
+            String result = game.checkGuess(guess);
+            if (result.equals("correct") || result.equals("Game over")) {
+                return checksum + game.getAttempts();
+            }
+            checksum += game.getHint().length();
+            if (result.equals("Too low!")) {
+                low = guess + 1;
+            } else {
+                high = guess - 1;
+            }
+        }
+    }
+
+    private static void playSession(GameSessionManager manager, long id) {
+        manager.resetGame(id);
+        long checksum = manager.getHint(id).length();
+        int low = 0;
+        int high = 50;
+        while (true) {
+            int guess = (low + high) >>> 1;
+            String result = manager.checkGuess(id, guess);
+            if (result.equals("correct") || result.equals("Game over")) {
+                break;
+            }
+            checksum += manager.getHint(id).length();
+            if (result.equals("Too low!")) {
+                low = guess + 1;
+            } else {
+                high = guess - 1;
+            }
+        }
+        sink += checksum;
+    }
+
+    private static void measure(String name, Op op) {
+        long acc = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            acc += op.run(i);
+        }
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            acc += op.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        sink += acc;
+        System.out.printf("%-32s %10.2f ns/op %10.1f B/op %10.1f MB/s alloc%n", name,
+            (double) elapsed / MEASURED_ITERATIONS,
+            (double) bytes / MEASURED_ITERATIONS,
+            bytes / 1e6 / (elapsed / 1e9));
+    }
+
+    // Per-thread allocation counter, the same source JMH's GC profiler reads
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -1,163 +1,110 @@
 import java.awt.*;
 import javax.swing.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
-import java.util.Random;
-
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.parser.ParserDelegator;
+
+// The game model lives on one logic thread; the EDT only validates input and paints. The logic thread
+// publishes an immutable ViewState after every change, and however many it publishes between two EDT
+// turns, the EDT applies just the latest one, in a single pass over the widgets.
 public class NumberGuessingGui extends JFrame {
+    static final int NO_INPUT = -1;
+    static final int NOT_A_NUMBER = -2;
+    private static final long REPEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(150); // Double click or key bounce
+    private static final int TICK_MILLIS = 250;
+
     private final NumberGuessingLogic game;
     private final JTextField guessField;
     private final JButton guessButton;
     private final JButton playAgainButton;
+    private final JLabel titleLabel;
     private final JLabel feedbackLabel;
     private final JLabel hintLabel;
     private final JLabel timerLabel;
     private final JLabel pointsLabel;
-    private final JButton insightButton;
-    private final JButton clarityButton;
-    private final JButton timeWarpButton;
-    private final JButton precisionButton;
-    private final JButton secondChanceButton;
-    private Timer countdownTimer;
-    private int timeLeft;
-
-    // Custom panel with themed background
-    private static class TexturedPanel extends JPanel {
-        private final boolean showGuessing;
-        private BufferedImage texture;
-        private float twinklePhase;
-        private Symbol[] symbols; // Array to store moving symbols
-
-        private static class Symbol {
-            float x, y; // Position
-            float vx, vy; // Velocity
-            String value; // Symbol (e.g., "?", "0", "★")
-            float phaseOffset; // For twinkling
-
-            Symbol(String value, float x, float y, float vx, float vy, float phaseOffset) {
-                this.value = value;
-                this.x = x;
-                this.y = y;
-                this.vx = vx;
-                this.vy = vy;
-                this.phaseOffset = phaseOffset;
-            }
-        }
-
-        public TexturedPanel(boolean showGuessing) {
-            this.showGuessing = showGuessing;
-            setOpaque(true);
-            generateTexture();
-            // Initialize symbols for animation
-            if (showGuessing) {
-                Random rand = new Random();
-                String[] symbolValues = {"?", "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "★", "✦"};
-                symbols = new Symbol[35]; // Reduced to 20 symbols
-                for (int i = 0; i < symbols.length; i++) {
-                    float x = rand.nextInt(500);
-                    float y = rand.nextInt(450);
-                    float angle = rand.nextFloat() * 2 * (float) Math.PI;
-                    float speed = 0.5f + rand.nextFloat() * 1.0f; // Speed between 0.5 and 1.5 pixels per frame
-                    symbols[i] = new Symbol(
-                        symbolValues[rand.nextInt(symbolValues.length)],
-                        x, y,
-                        (float) Math.cos(angle) * speed,
-                        (float) Math.sin(angle) * speed,
-                        rand.nextFloat() * 2 * (float) Math.PI
-                    );
-                }
-            }
-            // Timer for animation (100ms for slower effect)
-            new Timer(50, e -> {
-                twinklePhase = (twinklePhase + 0.05f) % (2 * (float) Math.PI);
-                if (showGuessing) {
-                    updateSymbols();
-                }
-                repaint();
-            }).start();
-        }
-
-        private void generateTexture() {
-            int w = 500;
-            int h = 450;
-            texture = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = texture.createGraphics();
-            Random rand = new Random();
-
-            // Teal-to-green gradient background
-            GradientPaint cosmicGradient = new GradientPaint(
-                0, 0, new Color(10, 50, 60), // Deep teal
-                0, h, new Color(20, 80, 40)  // Dark green
-            );
-            g2d.setPaint(cosmicGradient);
-            g2d.fillRect(0, 0, w, h);
-
-            // Add starry specks
-            for (int i = 0; i < 100; i++) {
-                int x = rand.nextInt(w);
-                int y = rand.nextInt(h);
-                int size = rand.nextInt(3) + 1;
-                g2d.setColor(new Color(255, 255, 255, 100 + rand.nextInt(100)));
-                g2d.fillOval(x, y, size, size);
-            }
-
-            g2d.dispose();
-        }
-
-        private void updateSymbols() {
-            int w = getWidth();
-            int h = getHeight();
-            for (Symbol symbol : symbols) {
-                // Update position
-                symbol.x += symbol.vx;
-                symbol.y += symbol.vy;
-                // Bounce off edges
-                if (symbol.x < 0 || symbol.x > w) symbol.vx = -symbol.vx;
-                if (symbol.y < 0 || symbol.y > h) symbol.vy = -symbol.vy;
-                // Keep within bounds
-                symbol.x = Math.max(0, Math.min(w, symbol.x));
-                symbol.y = Math.max(0, Math.min(h, symbol.y));
-            }
+    private final Map<Enchantment, JButton> enchantmentButtons = new EnumMap<>(Enchantment.class);
+    private final GameMetrics metrics = GameMetrics.shared();
+    private final ScheduledExecutorService logic = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "game-logic");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<ViewState> latest = new AtomicReference<>();
+    private final AtomicBoolean publishPending = new AtomicBoolean();
+    // Logic thread only
+    private ScheduledFuture<?> countdown;
+    private int timeLeftSeconds;
+    private String feedback = " ";
+    private int feedbackSerial;
+    private String hint;
+    private boolean over;
+    private int guessesHandled;
+    // EDT only
+    private ViewState shown;
+    private int guessesSubmitted;
+    private int lastSubmitted = NO_INPUT;
+    private long lastSubmittedNanos;
+    private final boolean exitAfterStartup; // Report startup time and quit instead of playing
+    private boolean firstFramePainted;
+
+    // Everything the widgets show, as of one moment on the logic thread
+    private static final class ViewState {
+        final GameRules rules;
+        final String feedback;
+        final int feedbackSerial; // Repeating the same message still counts as a change
+        final String hint;
+        final int timeLeftSeconds;
+        final int points;
+        final int affordable; // Enchantment masks the points cover
+        final boolean over;
+        final int guessesHandled;
+
+        ViewState(GameRules rules, String feedback, int feedbackSerial, String hint, int timeLeftSeconds, int points,
+                  int affordable, boolean over, int guessesHandled) {
+            this.rules = rules;
+            this.feedback = feedback;
+            this.feedbackSerial = feedbackSerial;
+            this.hint = hint;
+            this.timeLeftSeconds = timeLeftSeconds;
+            this.points = points;
+            this.affordable = affordable;
+            this.over = over;
+            this.guessesHandled = guessesHandled;
         }
+    }
 
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2d = (Graphics2D) g;
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            int w = getWidth();
-            int h = getHeight();
-
-            // Draw cached texture, scaled to panel size
-            g2d.drawImage(texture, 0, 0, w, h, null);
-
-            // Draw dynamic symbols if enabled
-            if (showGuessing && symbols != null) {
-                g2d.setFont(new Font("Serif", Font.BOLD, 20));
-                for (Symbol symbol : symbols) {
-                    int alpha = (int) (100 + 50 * Math.sin(twinklePhase + symbol.phaseOffset));
-                    g2d.setColor(new Color(180, 255, 200, Math.min(alpha, 255))); // Light teal
-                    g2d.drawString(symbol.value, symbol.x, symbol.y);
-                }
-            }
+    public NumberGuessingGui() {
+        this(GameRules::defaults);
+    }
 
-            // Add glowing overlay
-            GradientPaint glow = new GradientPaint(
-                0, 0, new Color(255, 255, 255, 20),
-                0, h, new Color(100, 255, 150, 50) // Light teal-green
-            );
-            g2d.setPaint(glow);
-            g2d.fillRect(0, 0, w, h);
-        }
+    // Rules are read at every new game, so a reloading source changes the next game, never the current one
+    public NumberGuessingGui(Supplier<GameRules> rulesSource) {
+        this(rulesSource, false);
     }
 
-    public NumberGuessingGui() {
+    private NumberGuessingGui(Supplier<GameRules> rulesSource, boolean exitAfterStartup) {
+        this.exitAfterStartup = exitAfterStartup;
         setTitle("🎯 Number Guessing Game");
         setSize(500, 450);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
-        game = new NumberGuessingLogic();
+        game = new NumberGuessingLogic(TargetSource.threadLocal(), rulesSource);
+        hint = game.getHint();
+        timeLeftSeconds = game.getTimeLimitSeconds();
+        shown = snapshot(); // Handing the game to the logic thread happens after this, via the executor
 
         TexturedPanel mainPanel = new TexturedPanel(false);
         mainPanel.setLayout(new BorderLayout());
@@ -167,7 +114,7 @@ public class NumberGuessingGui extends JFrame {
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.insets = new Insets(10, 10, 10, 10);
 
-        JLabel titleLabel = new JLabel("🔍 Guess a number between 0 and 50 (5 attempts)");
+        titleLabel = new JLabel(titleText(shown.rules));
         titleLabel.setFont(new Font("Arial", Font.BOLD, 16));
         titleLabel.setForeground(Color.WHITE);
         titleLabel.setOpaque(false);
@@ -176,7 +123,7 @@ public class NumberGuessingGui extends JFrame {
         gbc.gridwidth = 2;
         gamePanel.add(titleLabel, gbc);
 
-        timerLabel = new JLabel("⏳ Time Left: 30s");
+        timerLabel = new JLabel(timerText(shown.timeLeftSeconds));
         timerLabel.setFont(new Font("Arial", Font.BOLD, 14));
         timerLabel.setForeground(Color.ORANGE);
         timerLabel.setOpaque(false);
@@ -207,7 +154,7 @@ public class NumberGuessingGui extends JFrame {
         gbc.gridwidth = 2;
         gamePanel.add(feedbackLabel, gbc);
 
-        hintLabel = new JLabel(game.getHint());
+        hintLabel = new JLabel(shown.hint);
         hintLabel.setFont(new Font("Arial", Font.ITALIC, 13));
         hintLabel.setForeground(Color.CYAN);
         hintLabel.setOpaque(false);
@@ -228,41 +175,22 @@ public class NumberGuessingGui extends JFrame {
             BorderFactory.createLineBorder(Color.WHITE), "Enchantments", 0, 0,
             new Font("Arial", Font.BOLD, 14), Color.WHITE));
 
-        pointsLabel = new JLabel("Points: " + game.getEnchantmentPoints());
+        pointsLabel = new JLabel(pointsText(shown.points));
         pointsLabel.setFont(new Font("Arial", Font.BOLD, 14));
         pointsLabel.setForeground(Color.GREEN);
         pointsLabel.setOpaque(false);
         enchantPanel.add(pointsLabel);
 
-        insightButton = new JButton("Insight (5)");
-        insightButton.setFont(new Font("Arial", Font.PLAIN, 12));
-        insightButton.setBackground(new Color(50, 50, 50));
-        insightButton.setForeground(Color.WHITE);
-        enchantPanel.add(insightButton);
-
-        clarityButton = new JButton("Clarity (3)");
-        clarityButton.setFont(new Font("Arial", Font.PLAIN, 12));
-        clarityButton.setBackground(new Color(50, 50, 50));
-        clarityButton.setForeground(Color.WHITE);
-        enchantPanel.add(clarityButton);
-
-        timeWarpButton = new JButton("Time Warp (8)");
-        timeWarpButton.setFont(new Font("Arial", Font.PLAIN, 12));
-        timeWarpButton.setBackground(new Color(50, 50, 50));
-        timeWarpButton.setForeground(Color.WHITE);
-        enchantPanel.add(timeWarpButton);
-
-        precisionButton = new JButton("Precision (4)");
-        precisionButton.setFont(new Font("Arial", Font.PLAIN, 12));
-        precisionButton.setBackground(new Color(50, 50, 50));
-        precisionButton.setForeground(Color.WHITE);
-        enchantPanel.add(precisionButton);
-
-        secondChanceButton = new JButton("Second Chance (10)");
-        secondChanceButton.setFont(new Font("Arial", Font.PLAIN, 12));
-        secondChanceButton.setBackground(new Color(50, 50, 50));
-        secondChanceButton.setForeground(Color.WHITE);
-        enchantPanel.add(secondChanceButton);
+        for (Enchantment enchantment : Enchantment.values()) {
+            JButton button = new JButton(enchantmentLabel(enchantment, shown.rules));
+            button.setFont(new Font("Arial", Font.PLAIN, 12));
+            button.setBackground(new Color(50, 50, 50));
+            button.setForeground(Color.WHITE);
+            button.setEnabled((shown.affordable & enchantment.getMask()) != 0);
+            button.addActionListener(e -> logic.execute(() -> applyEnchantment(enchantment)));
+            enchantmentButtons.put(enchantment, button);
+            enchantPanel.add(button);
+        }
 
         mainPanel.add(gamePanel, BorderLayout.CENTER);
         mainPanel.add(enchantPanel, BorderLayout.SOUTH);
@@ -270,19 +198,49 @@ public class NumberGuessingGui extends JFrame {
 
         guessButton.addActionListener(e -> processGuess());
         guessField.addActionListener(e -> processGuess());
-        playAgainButton.addActionListener(e -> resetGame());
-        insightButton.addActionListener(e -> applyEnchantment("Insight"));
-        clarityButton.addActionListener(e -> applyEnchantment("Clarity"));
-        timeWarpButton.addActionListener(e -> applyEnchantment("Time Warp"));
-        precisionButton.addActionListener(e -> applyEnchantment("Precision"));
-        secondChanceButton.addActionListener(e -> applyEnchantment("Second Chance"));
-
-        updateEnchantmentButtons();
-        showRules();
-        startTimer();
+        playAgainButton.addActionListener(e -> logic.execute(this::resetGame));
+
+        // The rules dialog and the countdown wait until the window is up, so the first frame is not
+        // held back by the dialog and no time runs out while the rules are being read
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                if (!exitAfterStartup) {
+                    SwingUtilities.invokeLater(NumberGuessingGui.this::showRulesAndStart);
+                }
+            }
+        });
     }
 
-    private void showRules() {
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!firstFramePainted) {
+            firstFramePainted = true;
+            Instant jvmStart = ProcessHandle.current().info().startInstant().orElse(null);
+            if (jvmStart != null) {
+                metrics.recordStartup(System.currentTimeMillis() - jvmStart.toEpochMilli());
+            }
+            if (exitAfterStartup) {
+                SwingUtilities.invokeLater(this::reportStartupAndExit);
+            }
+        }
+    }
+
+    private void showRulesAndStart() {
+        buildRulesDialog().setVisible(true); // Modal: returns once the player closes the rules
+        logic.execute(this::startTimer);
+    }
+
+    private void reportStartupAndExit() {
+        // Building the dialog still loads the classes a real session would, for class-data-sharing archives
+        buildRulesDialog().dispose();
+        System.out.println("Startup: first frame " + metrics.getStartupMillis() + " ms after JVM start");
+        System.exit(0);
+    }
+
+    // The HTML is only parsed here, after the window is up; warmUpRulesText has usually loaded the parser by then
+    private JDialog buildRulesDialog() {
         JDialog rulesDialog = new JDialog(this, "Rules and Regulations", true);
         rulesDialog.setSize(600, 500);
         rulesDialog.setLocationRelativeTo(this);
@@ -297,10 +255,13 @@ public class NumberGuessingGui extends JFrame {
         rulesText.setEditable(false);
         rulesText.setOpaque(false);
         rulesText.setFont(new Font("Arial", Font.PLAIN, 14));
+        GameRules gameRules = shown.rules;
+        int half = gameRules.getMinNumber() + gameRules.getRangeSize() / 2;
         String rules = "<html>" +
                        "<h1 style='color: white; text-align: center;'>Welcome to the Number Guessing Game!</h1>" +
                        "<h2 style='color: orange;'>Objective</h2>" +
-                       "<p style='color: white;'>Guess a number between 0 and 50 within 5 attempts or 30 seconds.</p>" +
+                       "<p style='color: white;'>Guess a number between " + gameRules.getMinNumber() + " and " + gameRules.getMaxNumber() +
+                       " within " + gameRules.getMaxAttempts() + " attempts or " + gameRules.getBaseTimeSeconds() + " seconds.</p>" +
                        "<h2 style='color: orange;'>Rules</h2>" +
                        "<ul style='color: white;'>" +
                        "<li>Enter a number in the text field and click 'Guess' or press Enter.</li>" +
@@ -309,13 +270,15 @@ public class NumberGuessingGui extends JFrame {
                        "<li>Click 'Play Again' to start a new game.</li>" +
                        "</ul>" +
                        "<h2 style='color: orange;'>Enchantments</h2>" +
-                       "<p style='color: white;'>Use Enchantment Points (earned 5 per win) to activate power-ups:</p>" +
+                       "<p style='color: white;'>Use Enchantment Points (earned " + gameRules.getWinPoints() + " per win) to activate power-ups:</p>" +
                        "<ul style='color: white;'>" +
-                       "<li><b>Insight (5 points)</b>: Adds range hint (0-24 or 25-50) to all hints.</li>" +
-                       "<li><b>Clarity (3 points)</b>: Reveals if the number is even/odd on first attempt.</li>" +
-                       "<li><b>Time Warp (8 points)</b>: Extends timer to 40 seconds.</li>" +
-                       "<li><b>Precision (4 points)</b>: Next hint shows proximity (e.g., within 5).</li>" +
-                       "<li><b>Second Chance (10 points)</b>: Grants one extra attempt.</li>" +
+                       "<li><b>Insight (" + gameRules.getCost(Enchantment.INSIGHT) + " points)</b>: Adds range hint (" + gameRules.getMinNumber() + "-" + (half - 1) +
+                       " or " + half + "-" + gameRules.getMaxNumber() + ") to all hints.</li>" +
+                       "<li><b>Clarity (" + gameRules.getCost(Enchantment.CLARITY) + " points)</b>: Reveals if the number is even/odd on first attempt.</li>" +
+                       "<li><b>Time Warp (" + gameRules.getCost(Enchantment.TIME_WARP) + " points)</b>: Extends timer to " +
+                       (gameRules.getBaseTimeSeconds() + gameRules.getTimeWarpSeconds()) + " seconds.</li>" +
+                       "<li><b>Precision (" + gameRules.getCost(Enchantment.PRECISION) + " points)</b>: Next hint shows proximity (e.g., within 5).</li>" +
+                       "<li><b>Second Chance (" + gameRules.getCost(Enchantment.SECOND_CHANCE) + " points)</b>: Grants one extra attempt.</li>" +
                        "</ul>" +
                        "<p style='color: cyan; text-align: center;'>Start with a hint about whether the number is even or odd. Use enchantments wisely!</p>" +
                        "</html>";
@@ -336,115 +299,281 @@ public class NumberGuessingGui extends JFrame {
         rulesPanel.add(scrollPane, BorderLayout.CENTER);
         rulesPanel.add(okButton, BorderLayout.SOUTH);
         rulesDialog.add(rulesPanel);
-        rulesDialog.setVisible(true);
+        return rulesDialog;
     }
 
-    private void processGuess() {
-        String input = guessField.getText().trim();
-        if (input.isEmpty()) {
-            feedbackLabel.setText("❗ Please enter a number.");
-            return;
-        }
+    // Loads the HTML parser's DTD and the default style sheet off the EDT; together they are most
+    // of the cost of the first HTML text pane
+    private static void warmUpRulesText() {
+        Thread warmUp = new Thread(() -> {
+            new ParserDelegator();
+            new HTMLEditorKit().getStyleSheet();
+        }, "rules-text-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
 
-        try {
-            int guess = Integer.parseInt(input);
-            if (guess < 0 || guess > 50) {
-                feedbackLabel.setText("❗ Please enter a number between 0 and 50.");
-                return;
+    // Parses a guess of plain digits with surrounding whitespace, without exceptions or allocation.
+    // NO_INPUT for blank text, NOT_A_NUMBER for anything else that is not a non-negative int.
+    static int parseGuess(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return NO_INPUT;
+        }
+        if (end - start > 10) {
+            return NOT_A_NUMBER;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_A_NUMBER;
             }
-            String result = game.checkGuess(guess);
-
-            if (result.equals("correct")) {
-                feedbackLabel.setText("🎉 Correct! You guessed in " + game.getAttempts() + " attempts. +5 Points!");
-                endGame();
-            } else if (result.equals("Game over")) {
-                feedbackLabel.setText("💀 Game Over! The number was " + game.getTargetNumber());
-                endGame();
-            } else {
-                feedbackLabel.setText(result + " | Attempts left: " + (game.getMaxAttempts() - game.getAttempts()));
-                hintLabel.setText(game.getHint());
+            value = value * 10 + digit;
+        }
+        return value > Integer.MAX_VALUE ? NOT_A_NUMBER : (int) value;
+    }
+
+    // EDT: checks the input against the rules on screen and hands the guess to the logic thread. The
+    // same guess again while it is still fresh, e.g. a double click, is dropped; so is Enter on the
+    // cleared field while a guess is still being handled.
+    private void processGuess() {
+        int guess = parseGuess(guessField.getText());
+        if (guess == NO_INPUT) {
+            if (guessesSubmitted == shown.guessesHandled) {
+                feedbackLabel.setText("❗ Please enter a number.");
             }
-            pointsLabel.setText("Points: " + game.getEnchantmentPoints());
-            updateEnchantmentButtons();
-        } catch (NumberFormatException e) {
+            return;
+        }
+        if (guess == NOT_A_NUMBER) {
             feedbackLabel.setText("❗ Invalid input! Enter a valid number.");
+        } else if (!shown.rules.isInRange(guess)) {
+            feedbackLabel.setText("❗ Please enter a number between " + shown.rules.getMinNumber() + " and " + shown.rules.getMaxNumber() + ".");
+            return;
+        } else {
+            long now = System.nanoTime();
+            if (guess != lastSubmitted || now - lastSubmittedNanos >= REPEAT_NANOS) {
+                lastSubmitted = guess;
+                lastSubmittedNanos = now;
+                guessesSubmitted++;
+                logic.execute(() -> applyGuess(guess));
+            }
         }
-
         guessField.setText("");
         guessField.requestFocus();
     }
 
-    private void applyEnchantment(String enchantment) {
-        if (game.activateEnchantment(enchantment)) {
-            feedbackLabel.setText("✅ " + enchantment + " activated!");
-            if (enchantment.equals("Insight") || enchantment.equals("Clarity")) {
-                hintLabel.setText(game.getHint());
-            } else if (enchantment.equals("Time Warp")) {
-                timeLeft += 10;
-                timerLabel.setText("⏳ Time Left: " + timeLeft + "s");
-            } else if (enchantment.equals("Second Chance")) {
-                feedbackLabel.setText("✅ Second Chance activated! Attempts left: " + (game.getMaxAttempts() - game.getAttempts()));
+    // Logic thread
+    private void applyGuess(int guess) {
+        guessesHandled++;
+        if (over) {
+            publish(); // Queued behind the guess that ended the game
+            return;
+        }
+        GuessResult result = game.guess(guess);
+        if (result == GuessResult.CORRECT) {
+            say("🎉 Correct! You guessed in " + game.getAttempts() + " attempts. +" + game.getRules().getWinPoints() + " Points!");
+            metrics.recordOutcome(GameMetrics.Outcome.WIN);
+            endGame();
+        } else if (result == GuessResult.GAME_OVER) {
+            say("💀 Game Over! The number was " + game.getTargetNumber());
+            metrics.recordOutcome(GameMetrics.Outcome.LOSS);
+            endGame();
+        } else {
+            say(result.getMessage() + " | Attempts left: " + (game.getMaxAttempts() - game.getAttempts()));
+            hint = game.getHint();
+        }
+        publish();
+    }
+
+    // Logic thread
+    private void applyEnchantment(Enchantment enchantment) {
+        if (over && enchantment == Enchantment.TIME_WARP) {
+            say("❌ Time Warp needs a game in play!"); // No clock left to extend
+        } else if (game.activateEnchantment(enchantment)) {
+            metrics.recordEnchantment(enchantment);
+            say("✅ " + enchantment.getDisplayName() + " activated!");
+            switch (enchantment) {
+                case INSIGHT:
+                case CLARITY:
+                    hint = game.getHint();
+                    break;
+                case TIME_WARP:
+                    refreshTimer();
+                    break;
+                case SECOND_CHANCE:
+                    say("✅ Second Chance activated! Attempts left: " + (game.getMaxAttempts() - game.getAttempts()));
+                    break;
+                default:
+                    break;
             }
-            pointsLabel.setText("Points: " + game.getEnchantmentPoints());
-            updateEnchantmentButtons();
         } else {
-            feedbackLabel.setText("❌ Not enough points or enchantment already used!");
+            say("❌ Not enough points or enchantment already used!");
         }
+        publish();
     }
 
-    private void updateEnchantmentButtons() {
-        insightButton.setEnabled(game.getEnchantmentPoints() >= 5);
-        clarityButton.setEnabled(game.getEnchantmentPoints() >= 3);
-        timeWarpButton.setEnabled(game.getEnchantmentPoints() >= 8);
-        precisionButton.setEnabled(game.getEnchantmentPoints() >= 4);
-        secondChanceButton.setEnabled(game.getEnchantmentPoints() >= 10);
+    private void say(String message) {
+        feedback = message;
+        feedbackSerial++;
     }
 
-    private void startTimer() {
-        timeLeft = game.isTimeWarpActive() ? 40 : 30;
-        timerLabel.setText("⏳ Time Left: " + timeLeft + "s");
-
-        countdownTimer = new Timer(1000, new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                timeLeft--;
-                timerLabel.setText("⏳ Time Left: " + timeLeft + "s");
-
-                if (timeLeft <= 0) {
-                    countdownTimer.stop();
-                    feedbackLabel.setText("⏰ Time's up! The number was " + game.getTargetNumber());
-                    endGame();
-                }
+    private static String titleText(GameRules rules) {
+        return "🔍 Guess a number between " + rules.getMinNumber() + " and " + rules.getMaxNumber() + " (" + rules.getMaxAttempts() + " attempts)";
+    }
+
+    private static String enchantmentLabel(Enchantment enchantment, GameRules rules) {
+        return enchantment.getDisplayName() + " (" + rules.getCost(enchantment) + ")";
+    }
+
+    private static String timerText(int seconds) {
+        return "⏳ Time Left: " + seconds + "s";
+    }
+
+    private static String pointsText(int points) {
+        return "Points: " + points;
+    }
+
+    // Logic thread: the state the widgets should show now
+    private ViewState snapshot() {
+        GameRules rules = game.getRules();
+        int points = game.getEnchantmentPoints();
+        int affordable = 0;
+        for (Enchantment enchantment : Enchantment.values()) {
+            if (points >= rules.getCost(enchantment) && !(over && enchantment == Enchantment.TIME_WARP)) {
+                affordable |= enchantment.getMask();
             }
-        });
+        }
+        return new ViewState(rules, feedback, feedbackSerial, hint, timeLeftSeconds, points, affordable, over, guessesHandled);
+    }
 
-        countdownTimer.start();
+    // Logic thread: at most one EDT task is pending at a time, and it applies the latest state
+    private void publish() {
+        latest.set(snapshot());
+        if (publishPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::showLatest);
+        }
+    }
+
+    private void showLatest() {
+        publishPending.set(false);
+        show(latest.get());
+    }
+
+    // EDT: one pass over the widgets, setting only what differs from the state shown before
+    private void show(ViewState state) {
+        ViewState before = shown;
+        if (state == before) {
+            return;
+        }
+        shown = state;
+        if (state.rules != before.rules) {
+            titleLabel.setText(titleText(state.rules));
+            for (Map.Entry<Enchantment, JButton> entry : enchantmentButtons.entrySet()) {
+                entry.getValue().setText(enchantmentLabel(entry.getKey(), state.rules));
+            }
+        }
+        if (state.feedbackSerial != before.feedbackSerial) {
+            feedbackLabel.setText(state.feedback);
+        }
+        if (!state.hint.equals(before.hint)) {
+            hintLabel.setText(state.hint);
+        }
+        if (state.timeLeftSeconds != before.timeLeftSeconds) {
+            timerLabel.setText(timerText(state.timeLeftSeconds));
+        }
+        if (state.points != before.points) {
+            pointsLabel.setText(pointsText(state.points));
+        }
+        if (state.affordable != before.affordable) {
+            for (Map.Entry<Enchantment, JButton> entry : enchantmentButtons.entrySet()) {
+                entry.getValue().setEnabled((state.affordable & entry.getKey().getMask()) != 0);
+            }
+        }
+        if (state.over != before.over) {
+            guessButton.setEnabled(!state.over);
+            guessField.setEnabled(!state.over);
+            playAgainButton.setVisible(state.over);
+            if (!state.over) {
+                guessField.setText("");
+                guessField.requestFocus();
+            }
+        }
+    }
+
+    // Logic thread. The countdown polls the model a few times a second so the label stays within a
+    // tick of the real deadline, including after Time Warp moves it.
+    private void startTimer() {
+        game.startClock(System.currentTimeMillis());
+        if (countdown == null) {
+            countdown = logic.scheduleAtFixedRate(() -> {
+                refreshTimer();
+                publish();
+            }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        refreshTimer();
+        publish();
+    }
+
+    // Once the game is over the label keeps the time it ended with; the stopped clock would read full
+    private void refreshTimer() {
+        if (over) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        timeLeftSeconds = game.getTimeLeftSeconds(now);
+        if (game.isTimedOut(now)) {
+            say("⏰ Time's up! The number was " + game.getTargetNumber());
+            metrics.recordOutcome(GameMetrics.Outcome.TIMEOUT);
+            endGame();
+        }
     }
 
     private void endGame() {
-        guessButton.setEnabled(false);
-        guessField.setEnabled(false);
-        playAgainButton.setVisible(true);
-        if (countdownTimer != null) {
-            countdownTimer.stop();
+        over = true;
+        if (countdown != null) {
+            countdown.cancel(false);
+            countdown = null;
         }
-        updateEnchantmentButtons();
+        game.stopClock();
     }
 
+    // Logic thread
     private void resetGame() {
         game.resetGame();
-        feedbackLabel.setText(" ");
-        hintLabel.setText(game.getHint());
-        guessField.setEnabled(true);
-        guessButton.setEnabled(true);
-        guessField.setText("");
-        guessField.requestFocus();
-        playAgainButton.setVisible(false);
-        pointsLabel.setText("Points: " + game.getEnchantmentPoints());
-        updateEnchantmentButtons();
+        feedback = " ";
+        feedbackSerial++;
+        hint = game.getHint();
+        over = false;
         startTimer();
     }
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new NumberGuessingGui().setVisible(true));
+    // Arguments: an optional GameRules properties file, watched for changes, and --exit-after-startup
+    // to print the time to the first frame and quit, for tracking startup or training a CDS archive
+    public static void main(String[] args) throws IOException {
+        // Background work first, so it overlaps Swing's own initialisation
+        TexturedPanel.prepareTexture();
+        warmUpRulesText();
+        boolean exitAfterStartup = false;
+        Supplier<GameRules> rules = GameRules::defaults;
+        for (String arg : args) {
+            if (arg.equals("--exit-after-startup")) {
+                exitAfterStartup = true;
+            } else {
+                GameRulesFile file = new GameRulesFile(Paths.get(arg));
+                file.watch(2_000);
+                rules = file;
+            }
+        }
+        Supplier<GameRules> rulesSource = rules;
+        boolean exit = exitAfterStartup;
+        SwingUtilities.invokeLater(() -> new NumberGuessingGui(rulesSource, exit).setVisible(true));
     }
 }
\ No newline at end of file
@@ -1,29 +1,122 @@
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
 public class NumberGuessingLogic {
+    // Enchantments that change what a hint says
+    private static final int HINT_FLAGS = Enchantment.INSIGHT.getMask() | Enchantment.PRECISION.getMask() | Enchantment.CLARITY.getMask();
+
     private int targetNumber;
     private int attempts;
-    private int maxAttempts = 5;
+    private int maxAttempts;
     private int lastGuess; // Store the last guess for hint generation
     private int enchantmentPoints; // Track player's enchantment points
-    private boolean insightActive; // Insight enchantment status
-    private boolean timeWarpActive; // Time Warp enchantment status
-    private boolean precisionActive; // Precision enchantment status (for next guess)
-    private boolean clarityUsed; // Clarity enchantment used in this game
-    private boolean secondChanceUsed; // Second Chance enchantment used in this game
+    private int enchantmentFlags; // Enchantment masks active or used in this game (Precision clears once consumed)
+    private boolean precomputedHints; // Serve hints from the shared HintTable instead of building them
+    private IntConsumer pointsListener; // Notified with every change to enchantmentPoints, e.g. a PointsLedger
+    private GameEvent.Listener eventListener; // Notified with every state transition, e.g. a GameJournal
+    private final TargetSource targetSource;
+    private final Supplier<GameRules> rulesSource; // Read once per game, so new rules take effect at the next reset
+    private GameRules rules;
+    private long deadlineMillis; // When the current game times out; 0 while the clock is not running
+    private CandidateSet candidates; // Numbers still possible, kept only under rules with candidate hints
+    private Hint hint; // Reused by every describeHint call
 
     public NumberGuessingLogic() {
+        this(TargetSource.threadLocal());
+    }
+
+    public NumberGuessingLogic(TargetSource targetSource) {
+        this(targetSource, GameRules::defaults);
+    }
+
+    public NumberGuessingLogic(TargetSource targetSource, Supplier<GameRules> rulesSource) {
+        this.targetSource = targetSource;
+        this.rulesSource = rulesSource;
         resetGame();
     }
 
     public void resetGame() {
-        targetNumber = (int) (Math.random() * 51); // 0 to 50
+        GameRules next = rulesSource.get();
+        startGame(next, next.getMinNumber() + targetSource.nextTarget(next.getRangeSize()));
+    }
+
+    // New game with a known target, e.g. when replaying a journal
+    void resetGame(int target) {
+        startGame(rulesSource.get(), target);
+    }
+
+    private void startGame(GameRules next, int target) {
+        rules = next;
+        targetNumber = target;
         attempts = 0;
         lastGuess = -1;
-        insightActive = false;
-        timeWarpActive = false;
-        precisionActive = false;
-        clarityUsed = false;
-        secondChanceUsed = false;
-        maxAttempts = 5; // Reset max attempts in case Second Chance was used
+        enchantmentFlags = 0;
+        maxAttempts = rules.getMaxAttempts(); // Reset max attempts in case Second Chance was used
+        deadlineMillis = 0;
+        if (rules.isCandidateHints()) {
+            if (candidates == null) {
+                candidates = new CandidateSet();
+            }
+            candidates.reset(rules.getMinNumber(), rules.getMaxNumber());
+        }
+        emit(GameEvent.RESET, target);
+    }
+
+    // Starts the countdown for the current game
+    public void startClock(long nowMillis) {
+        deadlineMillis = nowMillis + getTimeLimitSeconds() * 1000L;
+    }
+
+    // Continues a countdown started elsewhere, e.g. on the node a session was handed off from
+    public void resumeClock(long nowMillis, long millisLeft) {
+        deadlineMillis = nowMillis + millisLeft;
+    }
+
+    public void stopClock() {
+        deadlineMillis = 0;
+    }
+
+    public boolean isClockRunning() {
+        return deadlineMillis != 0;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public int getTimeLimitSeconds() {
+        return rules.getBaseTimeSeconds() + (isTimeWarpActive() ? rules.getTimeWarpSeconds() : 0);
+    }
+
+    public long getTimeLeftMillis(long nowMillis) {
+        if (deadlineMillis == 0) {
+            return getTimeLimitSeconds() * 1000L;
+        }
+        return Math.max(0, deadlineMillis - nowMillis);
+    }
+
+    // Whole seconds left, rounded up the way a countdown display shows them
+    public int getTimeLeftSeconds(long nowMillis) {
+        return (int) ((getTimeLeftMillis(nowMillis) + 999) / 1000);
+    }
+
+    public boolean isTimedOut(long nowMillis) {
+        return deadlineMillis != 0 && nowMillis >= deadlineMillis;
+    }
+
+    // Whether the current game is over: won, out of attempts or out of time
+    public boolean isFinished(long nowMillis) {
+        return lastGuess == targetNumber || attempts >= maxAttempts || isTimedOut(nowMillis);
+    }
+
+    // Ends the current game on time; the deadline is pinned in the past so isTimedOut stays true until the next reset
+    public void timeOut() {
+        deadlineMillis = 1;
+        emit(GameEvent.TIMEOUT, 0);
+    }
+
+    public GameRules getRules() {
+        return rules;
     }
 
     public int getAttempts() {
@@ -43,143 +136,242 @@ public class NumberGuessingLogic {
     }
 
     public void addEnchantmentPoints(int points) {
+        emit(GameEvent.POINTS, points);
+        awardPoints(points);
+    }
+
+    private void awardPoints(int points) {
         enchantmentPoints += points;
+        if (pointsListener != null) {
+            pointsListener.accept(points);
+        }
+    }
+
+    public void setPointsListener(IntConsumer pointsListener) {
+        this.pointsListener = pointsListener;
     }
 
+    public void setEventListener(GameEvent.Listener eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    // String entry point kept for existing callers; dispatches through the enum
     public boolean activateEnchantment(String enchantment) {
-        switch (enchantment) {
-            case "Insight":
-                if (enchantmentPoints >= 5 && !insightActive) {
-                    enchantmentPoints -= 5;
-                    insightActive = true;
-                    return true;
-                }
-                return false;
-            case "Clarity":
-                if (enchantmentPoints >= 3 && !clarityUsed) {
-                    enchantmentPoints -= 3;
-                    clarityUsed = true;
-                    return true;
-                }
-                return false;
-            case "Time Warp":
-                if (enchantmentPoints >= 8 && !timeWarpActive) {
-                    enchantmentPoints -= 8;
-                    timeWarpActive = true;
-                    return true;
-                }
-                return false;
-            case "Precision":
-                if (enchantmentPoints >= 4 && !precisionActive) {
-                    enchantmentPoints -= 4;
-                    precisionActive = true;
-                    return true;
-                }
-                return false;
-            case "Second Chance":
-                if (enchantmentPoints >= 10 && !secondChanceUsed) {
-                    enchantmentPoints -= 10;
-                    secondChanceUsed = true;
-                    maxAttempts++;
-                    return true;
-                }
-                return false;
-            default:
-                return false;
+        Enchantment typed = Enchantment.fromName(enchantment);
+        return typed != null && activateEnchantment(typed);
+    }
+
+    public boolean activateEnchantment(Enchantment enchantment) {
+        int mask = enchantment.getMask();
+        int cost = rules.getCost(enchantment);
+        if (enchantmentPoints < cost || (enchantmentFlags & mask) != 0) {
+            return false;
+        }
+        emit(GameEvent.ENCHANT, enchantment.ordinal());
+        enchantmentPoints -= cost;
+        enchantmentFlags |= mask;
+        if (pointsListener != null) {
+            pointsListener.accept(-cost);
         }
+        if (enchantment == Enchantment.SECOND_CHANCE) {
+            maxAttempts++;
+        } else if (enchantment == Enchantment.TIME_WARP && deadlineMillis != 0) {
+            deadlineMillis += rules.getTimeWarpSeconds() * 1000L;
+        }
+        return true;
+    }
+
+    public boolean isEnchantmentActive(Enchantment enchantment) {
+        return (enchantmentFlags & enchantment.getMask()) != 0;
+    }
+
+    public int getEnchantmentFlags() {
+        return enchantmentFlags;
     }
 
     public String checkGuess(int guess) {
+        return guess(guess).getMessage();
+    }
+
+    public GuessResult guess(int guess) {
+        emit(GameEvent.GUESS, guess);
         attempts++;
         lastGuess = guess;
+        if (rules.isCandidateHints()) {
+            if (guess < targetNumber) {
+                candidates.above(guess);
+            } else if (guess > targetNumber) {
+                candidates.below(guess);
+            }
+        }
         if (guess == targetNumber) {
-            addEnchantmentPoints(5); // Award 5 points for winning
-            return "correct";
+            awardPoints(rules.getWinPoints()); // Award points for winning
+            return GuessResult.CORRECT;
         } else if (attempts >= maxAttempts) {
-            return "Game over";
+            return GuessResult.GAME_OVER;
         } else if (guess < targetNumber) {
-            return "Too low!";
+            return GuessResult.TOO_LOW;
         } else {
-            return "Too high!";
+            return GuessResult.TOO_HIGH;
         }
     }
 
+    public void setPrecomputedHints(boolean precomputedHints) {
+        this.precomputedHints = precomputedHints;
+    }
+
+    public boolean isPrecomputedHints() {
+        return precomputedHints;
+    }
+
     public String getHint() {
-        // Provide a basic hint before the first attempt
-        if (attempts == 0) {
-            String hint = targetNumber % 2 == 0 ? "Starting Hint: The number is even." : "Starting Hint: The number is odd.";
-            if (insightActive) {
-                hint += " Insight: The number is " + (targetNumber < 25 ? "between 0 and 24." : "between 25 and 50.");
+        HintTable table = precomputedHints ? rules.getHintTable() : null;
+        String text = table != null ? table.lookup(targetNumber, lastGuess, attempts, enchantmentFlags) : null;
+        if (text == null) {
+            return describeHint().getText();
+        }
+        consumeHint();
+        return text;
+    }
+
+    // The current hint as a type and numbers, with the same effect on the game as getHint but no
+    // text built unless getText is called. The Hint is reused by this game's next hint request.
+    public Hint describeHint() {
+        boolean fresh = hint == null;
+        if (fresh) {
+            hint = new Hint();
+        }
+        if (!rules.isCandidateHints()) {
+            rules.describeHint(hint, targetNumber, lastGuess, attempts, enchantmentFlags);
+            consumeHint();
+            return hint;
+        }
+        // A hint that narrows the candidates is an event; asking again for the same hint is not
+        if (candidates.isHinted(attempts, enchantmentFlags & HINT_FLAGS)) {
+            if (fresh) {
+                // Given before this game was restored, e.g. by GameStateCodec. Describing it again
+                // would narrow again, so only the candidates it left are repeated.
+                hint.set(rules, Hint.Type.NONE, false, 0, 0, 0).setCandidates(candidates.count(), candidates.getLow(), candidates.getHigh());
             }
+            consumeHint();
             return hint;
         }
+        emit(GameEvent.HINT, 0);
+        rules.describeCandidateHint(hint, candidates, targetNumber, lastGuess, attempts, enchantmentFlags);
+        candidates.markHinted(attempts, enchantmentFlags & HINT_FLAGS);
+        enchantmentFlags = afterHint(attempts, enchantmentFlags);
+        return hint;
+    }
 
-        // Handle Clarity enchantment (triggered, overrides other hints if active)
-        if (clarityUsed && attempts == 1) {
-            return "Clarity: The number is " + (targetNumber % 2 == 0 ? "even." : "odd.");
-        }
-
-        // Calculate difference between guess and target
-        int difference = Math.abs(targetNumber - lastGuess);
-
-        // Early attempts (1-2): General range or property-based hints
-        if (attempts <= 2) {
-            if (precisionActive) {
-                precisionActive = false; // Consume Precision
-                return difference <= 5 ? "Precision: You're within 5 of the number!" : "Precision: You're within 10 of the number!";
-            } else if (difference <= 5) {
-                return "Hint: You're very close! Within 5 of the number.";
-            } else if (difference <= 10) {
-                return "Hint: You're close! Within 10 of the number.";
-            } else if (insightActive) {
-                return "Insight: The number is " + (targetNumber < 25 ? "between 0 and 24." : "between 25 and 50.");
-            } else if (targetNumber < 25) {
-                return "Hint: The number is in the lower half (0-24).";
-            } else {
-                return "Hint: The number is in the upper half (25-50).";
-            }
+    // Smallest and largest number still possible, or the whole range under rules without candidate hints
+    public int getCandidateLow() {
+        return rules.isCandidateHints() ? candidates.getLow() : rules.getMinNumber();
+    }
+
+    public int getCandidateHigh() {
+        return rules.isCandidateHints() ? candidates.getHigh() : rules.getMaxNumber();
+    }
+
+    private void consumeHint() {
+        int flags = afterHint(attempts, enchantmentFlags);
+        if (flags != enchantmentFlags) {
+            emit(GameEvent.HINT, 0); // Only hints that change state are events
+            enchantmentFlags = flags;
         }
-        // Mid attempts (3-4): More specific hints
-        else if (attempts <= 4) {
-            if (precisionActive) {
-                precisionActive = false; // Consume Precision
-                return difference <= 3 ? "Precision: You're within 3 of the number!" : "Precision: You're within 5 of the number!";
-            } else if (difference <= 3) {
-                return "Hint: You're extremely close! Within 3 of the number.";
-            } else if (targetNumber % 5 == 0) {
-                return "Hint: The number is a multiple of 5.";
-            } else if (targetNumber % 10 == 0) {
-                return "Hint: The number is a multiple of 10.";
-            } else if (lastGuess < targetNumber) {
-                return "Hint: Try a number higher than " + lastGuess + ".";
-            } else {
-                return "Hint: Try a number lower than " + lastGuess + ".";
-            }
+    }
+
+    // Replays one event recorded from another game; the listeners are notified as if it happened here
+    void apply(GameEvent event, int value) {
+        switch (event) {
+            case RESET:
+                resetGame(value);
+                break;
+            case GUESS:
+                guess(value);
+                break;
+            case HINT:
+                describeHint(); // Describing the hint again repeats whatever it narrowed
+                break;
+            case ENCHANT:
+                activateEnchantment(Enchantment.values()[value]);
+                break;
+            case POINTS:
+                addEnchantmentPoints(value);
+                break;
+            case TIMEOUT:
+                timeOut();
+                break;
+            default:
+                break;
         }
-        // Final attempt (5): Very specific hint
-        else {
-            if (precisionActive) {
-                precisionActive = false; // Consume Precision
-                return difference <= 2 ? "Precision: You're within 2 of the number!" : "Precision: You're within 5 of the number!";
-            } else if (difference <= 2) {
-                return "Final Hint: You're within 2 of the number!";
-            } else if (targetNumber % 3 == 0) {
-                return "Final Hint: The number is divisible by 3.";
-            } else if (targetNumber >= 40) {
-                return "Final Hint: The number is 40 or higher.";
-            } else if (targetNumber >= 30) {
-                return "Final Hint: The number is between 30 and 39.";
-            } else if (targetNumber >= 20) {
-                return "Final Hint: The number is between 20 and 29.";
-            } else if (targetNumber >= 10) {
-                return "Final Hint: The number is between 10 and 19.";
-            } else {
-                return "Final Hint: The number is a single-digit number.";
-            }
+    }
+
+    private void emit(GameEvent event, int value) {
+        if (eventListener != null) {
+            eventListener.onEvent(event, value);
+        }
+    }
+
+    // Precision only applies to the first hint after a guess, unless Clarity overrides it
+    static int afterHint(int attempts, int enchantmentFlags) {
+        boolean clarityOverrides = attempts == 1 && (enchantmentFlags & Enchantment.CLARITY.getMask()) != 0;
+        if (attempts > 0 && !clarityOverrides) {
+            return enchantmentFlags & ~Enchantment.PRECISION.getMask(); // Consume Precision
         }
+        return enchantmentFlags;
+    }
+
+    int getLastGuess() {
+        return lastGuess;
+    }
+
+    // Null unless the rules use candidate hints
+    CandidateSet getCandidates() {
+        return rules.isCandidateHints() ? candidates : null;
+    }
+
+    // Puts back a state read through the getters, e.g. by GameStateCodec; the candidates are
+    // restored separately through getCandidates. Rules, clock and listeners are left as they are.
+    void restoreState(int targetNumber, int lastGuess, int attempts, int maxAttempts, int enchantmentPoints, int enchantmentFlags) {
+        this.targetNumber = targetNumber;
+        this.lastGuess = lastGuess;
+        this.attempts = attempts;
+        this.maxAttempts = maxAttempts;
+        this.enchantmentPoints = enchantmentPoints;
+        this.enchantmentFlags = enchantmentFlags;
+        hint = null;
+    }
+
+    // Bit layout of the packed state used by CompactSessionStore:
+    // points 0-31, target 32-37, lastGuess + 1 38-43, attempts 44-48 (saturating), maxAttempts 49-52, enchantment flags 53-57
+    static final int PACKED_MAX_TARGET = 63;
+    static final int PACKED_MAX_GUESS = 62;
+    static final int PACKED_MAX_ATTEMPTS = 31;
+    static final int PACKED_MAX_MAX_ATTEMPTS = 15;
+
+    long toPackedState() {
+        if (rules.isCandidateHints() || targetNumber < 0 || targetNumber > PACKED_MAX_TARGET || lastGuess < -1 || lastGuess > PACKED_MAX_GUESS
+                || maxAttempts < 0 || maxAttempts > PACKED_MAX_MAX_ATTEMPTS) {
+            throw new IllegalStateException("Game state does not fit the packed layout");
+        }
+        return (enchantmentPoints & 0xFFFFFFFFL)
+            | ((long) targetNumber << 32)
+            | ((long) (lastGuess + 1) << 38)
+            | ((long) Math.min(attempts, PACKED_MAX_ATTEMPTS) << 44)
+            | ((long) maxAttempts << 49)
+            | ((long) enchantmentFlags << 53);
+    }
+
+    void fromPackedState(long state) {
+        enchantmentPoints = (int) state;
+        targetNumber = (int) (state >>> 32) & 0x3F;
+        lastGuess = ((int) (state >>> 38) & 0x3F) - 1;
+        attempts = (int) (state >>> 44) & 0x1F;
+        maxAttempts = (int) (state >>> 49) & 0xF;
+        enchantmentFlags = (int) (state >>> 53) & 0x1F;
     }
 
     public boolean isTimeWarpActive() {
-        return timeWarpActive;
+        return isEnchantmentActive(Enchantment.TIME_WARP);
     }
 }
\ No newline at end of file
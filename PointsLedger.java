@@ -0,0 +1,191 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+// Durable per-player enchantment points. Every award or spend is appended to a memory-mapped log;
+// a background thread forces the mapping to disk every flushIntervalMillis, so all records written
+// in between share one fsync (group commit). When the log fills up it is compacted into one
+// record per player. On open, the log is replayed up to the first record whose checksum fails,
+// which is where a crash interrupted the last write.
+public class PointsLedger implements Closeable {
+    // Record: player id (8 bytes), points delta (4 bytes), checksum (4 bytes)
+    private static final int RECORD_SIZE = 16;
+    private static final double COMPACT_THRESHOLD = 0.75;
+
+    private final Path path;
+    private final int capacityRecords;
+    private final Map<Long, Long> balances = new HashMap<>();
+    private final ScheduledExecutorService flusher;
+    private MappedByteBuffer log;
+    private int recordCount;
+    private boolean closed;
+
+    public PointsLedger(Path path, int capacityRecords, long flushIntervalMillis) throws IOException {
+        this.path = path;
+        this.capacityRecords = capacityRecords;
+        log = map(path);
+        recover();
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "points-ledger-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::periodicFlush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void record(long playerId, int delta) {
+        if (closed) {
+            throw new IllegalStateException("Ledger is closed");
+        }
+        if (delta == 0) {
+            return;
+        }
+        if (recordCount == capacityRecords) {
+            try {
+                compactLocked();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        append(log, recordCount++, playerId, delta);
+        balances.merge(playerId, (long) delta, Long::sum);
+    }
+
+    public synchronized long getBalance(long playerId) {
+        return balances.getOrDefault(playerId, 0L);
+    }
+
+    // Runs spend, which books its change through this ledger, only if the player's balance covers
+    // cost. The check and the booking happen under one lock, so a player's concurrent sessions,
+    // each holding its own copy of the points, cannot together spend more than the balance.
+    public synchronized boolean trySpend(long playerId, int cost, BooleanSupplier spend) {
+        return getBalance(playerId) >= cost && spend.getAsBoolean();
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    // Points listener for NumberGuessingLogic.setPointsListener that books every change against playerId
+    public IntConsumer listenerFor(long playerId) {
+        return delta -> record(playerId, delta);
+    }
+
+    // Forces everything appended so far to disk. The fsync runs outside the lock so appends are not stalled.
+    public void flush() {
+        MappedByteBuffer current;
+        synchronized (this) {
+            current = log;
+        }
+        current.force();
+    }
+
+    public synchronized void compact() throws IOException {
+        compactLocked();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            log.force();
+        }
+    }
+
+    private void periodicFlush() {
+        try {
+            flush();
+            synchronized (this) {
+                if (!closed && recordCount >= capacityRecords * COMPACT_THRESHOLD) {
+                    compactLocked();
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Points ledger flush failed: " + e.getMessage());
+        }
+    }
+
+    private void recover() {
+        recordCount = 0;
+        balances.clear();
+        while (recordCount < capacityRecords) {
+            int offset = recordCount * RECORD_SIZE;
+            long playerId = log.getLong(offset);
+            int delta = log.getInt(offset + 8);
+            if (log.getInt(offset + 12) != checksum(playerId, delta)) {
+                break; // End of the log, or a record torn by a crash
+            }
+            balances.merge(playerId, (long) delta, Long::sum);
+            recordCount++;
+        }
+        // Clear whatever a torn write left behind so later appends are not followed by stale bytes
+        for (int offset = recordCount * RECORD_SIZE; offset < capacityRecords * RECORD_SIZE; offset += 8) {
+            if (log.getLong(offset) != 0) {
+                log.putLong(offset, 0L);
+            }
+        }
+    }
+
+    // Rewrites the log as one record per player (split if a balance exceeds an int) and swaps it in atomically
+    private void compactLocked() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+        MappedByteBuffer target = map(compacted);
+        int count = 0;
+        for (Map.Entry<Long, Long> entry : balances.entrySet()) {
+            long remaining = entry.getValue();
+            while (remaining != 0) {
+                int delta = (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, remaining));
+                if (count == capacityRecords) {
+                    throw new IOException("Ledger capacity of " + capacityRecords + " records is too small to compact");
+                }
+                append(target, count++, entry.getKey(), delta);
+                remaining -= delta;
+            }
+        }
+        target.force();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = target;
+        recordCount = count;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacityRecords * RECORD_SIZE);
+        }
+    }
+
+    // The checksum covers both fields, so a partially written record fails recovery
+    private static void append(MappedByteBuffer buffer, int index, long playerId, int delta) {
+        int offset = index * RECORD_SIZE;
+        buffer.putLong(offset, playerId);
+        buffer.putInt(offset + 8, delta);
+        buffer.putInt(offset + 12, checksum(playerId, delta));
+    }
+
+    // Never zero for an all-zero record, so unwritten space is not mistaken for a record
+    private static int checksum(long playerId, int delta) {
+        long h = playerId * 0x9E3779B97F4A7C15L + delta;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        return (int) h ^ 0x5BD1E995;
+    }
+}
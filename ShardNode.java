@@ -0,0 +1,450 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// One member of a sharded game cluster: a GameServer whose keyed sessions (SESSION <key>) are placed
+// on nodes by a ShardRing. Membership changes arrive as RING commands carrying a version; the newest
+// wins. On each change a node streams every session it no longer owns to its new owner in
+// GameStateCodec form, then tells every member it is done. Each key is acknowledged on its own; a key
+// whose handoff was not acknowledged stays here, unserved, and is sent again HANDOFF_RETRY_MILLIS
+// later. Every handoff carries the key's generation, one more than the sender's, so a resent ADOPT
+// that was in fact applied, or one overtaken by a later move, changes nothing. Until a node has heard DONE from every member of the
+// previous ring (or DONOR_WAIT_MILLIS passed), a key it gained whose previous owner has not finished
+// answers RETRY rather than starting a fresh game, so no game in progress is lost or split.
+// Cluster commands, one line each on the game port, served only on a connection that has first sent
+// PEER <secret> with the cluster's shared secret (environment variable SHARD_SECRET); game clients
+// get ERR for all of them:
+//   VIEW                                              -> VIEW <version> <members>
+//   RING <version> <members>                          -> OK <version in force>
+//   ADOPT <key> <generation> <stateHex> <millisLeft>  -> OK
+//   DONE <node> <version>                             -> OK
+//   SESSIONS                                          -> SESSIONS <count>
+//   LEAVE                                             -> OK (hands every session to the remaining members, then exits)
+// Start each member with the full membership including itself and the same SHARD_SECRET; a new
+// member announces itself:
+//   SHARD_SECRET=... java ShardNode <host:port> <host:port,host:port,...> [reactors] [rulesFile]
+// Adopted sessions keep their game, points and time left, under the receiving node's rules, which
+// must be the sending node's rules.
+public class ShardNode implements GameServer.SessionDirectory, Closeable {
+    private static final long DONOR_WAIT_MILLIS = 10_000;
+    private static final int PEER_TIMEOUT_MILLIS = 5_000;
+    private static final long HANDOFF_RETRY_MILLIS = 1_000;
+
+    private final String self;
+    private final String secret;
+    private final GameSessionManager sessions;
+    private final GameServer server;
+    private final ConcurrentHashMap<Long, Long> keyed = new ConcurrentHashMap<>(); // Session key -> local session id
+    private final Map<Long, Long> generations = new ConcurrentHashMap<>(); // Session key -> handoffs behind its session; 0 if absent
+    private final Map<String, Long> doneVersions = new ConcurrentHashMap<>(); // Newest DONE heard from each node
+    private final ScheduledExecutorService handoffs = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "shard-handoff");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CountDownLatch left = new CountDownLatch(1);
+    private volatile boolean leaving;
+    private boolean retryPending; // Only touched on the handoff thread
+    private volatile View view;
+
+    // One membership version: the ring in force, the one before it, and the members of the one
+    // before that have not yet finished handing sessions over. A view replaced while still waiting
+    // is kept as before, since its donors may still be sending keys this node owns.
+    private static final class View {
+        final long version;
+        final ShardRing ring;
+        final ShardRing previous;
+        final View before;
+        final Set<String> donors = ConcurrentHashMap.newKeySet();
+        final long donorDeadline;
+
+        View(long version, ShardRing ring, ShardRing previous, View before) {
+            this.version = version;
+            this.ring = ring;
+            this.previous = previous;
+            this.before = before;
+            donorDeadline = System.currentTimeMillis() + DONOR_WAIT_MILLIS;
+        }
+
+        boolean isWaiting() {
+            return !donors.isEmpty() && System.currentTimeMillis() < donorDeadline;
+        }
+
+        // Whether the key's owner in some earlier view may still hand it over
+        boolean isWaitingFor(long key, String self) {
+            String donor = previous.owner(key);
+            if (donor != null && !donor.equals(self) && donors.contains(donor) && System.currentTimeMillis() < donorDeadline) {
+                return true;
+            }
+            return before != null && before.isWaitingFor(key, self);
+        }
+    }
+
+    public ShardNode(String self, String secret, ShardRing members, int reactors, Supplier<GameRules> rules) throws IOException {
+        if (secret == null || secret.isEmpty() || secret.contains(" ")) {
+            throw new IllegalArgumentException("The cluster secret must be a non-empty word");
+        }
+        this.self = self;
+        this.secret = secret;
+        sessions = new GameSessionManager(TimeUnit.MINUTES.toMillis(10), null, null, rules);
+        view = newView(0, members, members.without(self), null);
+        int colon = self.lastIndexOf(':');
+        InetSocketAddress address = new InetSocketAddress(self.substring(0, colon), Integer.parseInt(self.substring(colon + 1)));
+        server = new GameServer(address, reactors, sessions, this);
+    }
+
+    public String getName() {
+        return self;
+    }
+
+    public GameSessionManager getSessions() {
+        return sessions;
+    }
+
+    // Starts serving and announces itself. The membership is the newest view any reachable member
+    // has plus this node, so a stale member list cannot bring back a node that has left; changes
+    // should still be made one at a time. This node counts as new to the ring, so keys it owns wait
+    // for their previous owners like on any other member.
+    public void start() {
+        server.start();
+        View initial = view;
+        ShardRing members = initial.ring;
+        long version = System.currentTimeMillis();
+        long newest = -1;
+        for (String node : initial.previous.getNodes()) {
+            try {
+                String[] reply = request(node, secret, List.of("VIEW")).get(0).split(" ");
+                long seen = Long.parseLong(reply[1]);
+                if (seen > newest) {
+                    newest = seen;
+                    members = ShardRing.parse(reply.length > 2 ? reply[2] : "").with(self);
+                    version = Math.max(version, seen + 1);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Not up yet, e.g. while the cluster boots
+            }
+        }
+        synchronized (this) {
+            if (version > view.version) {
+                view = newView(version, members, members.without(self), null);
+            }
+        }
+        broadcast(members, version);
+        handoffs.execute(this::handOff); // Nothing to hand over, but the members wait for this node's DONE
+    }
+
+    @Override
+    public void close() throws IOException {
+        handoffs.shutdownNow();
+        server.close();
+    }
+
+    @Override
+    public long resolve(long key) {
+        View current = view;
+        if (!self.equals(current.ring.owner(key))) {
+            return MOVED; // Even with a session here: it is on its way to the owner, or about to be
+        }
+        Long local = keyed.get(key);
+        if (local != null && sessions.hasSession(local)) {
+            return local;
+        }
+        if (current.isWaitingFor(key, self)) {
+            return RETRY;
+        }
+        return keyed.compute(key, (k, id) -> id != null && sessions.hasSession(id) ? id : sessions.createSession());
+    }
+
+    @Override
+    public String ownerOf(long key) {
+        return view.ring.owner(key);
+    }
+
+    @Override
+    public boolean admitPeer(String presented) {
+        return MessageDigest.isEqual(secret.getBytes(StandardCharsets.US_ASCII), presented.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public String command(String line) {
+        String[] words = line.trim().split(" ");
+        try {
+            switch (words[0]) {
+                case "VIEW":
+                    View current = view;
+                    return "VIEW " + current.version + " " + current.ring;
+                case "RING":
+                    install(Long.parseLong(words[1]), ShardRing.parse(words.length > 2 ? words[2] : ""));
+                    return "OK " + view.version;
+                case "ADOPT":
+                    adopt(Long.parseLong(words[1]), Long.parseLong(words[2]),
+                        new GameSessionManager.Handoff(HexFormat.of().parseHex(words[3]), Long.parseLong(words[4])));
+                    return "OK";
+                case "DONE":
+                    done(words[1], Long.parseLong(words[2]));
+                    return "OK";
+                case "SESSIONS":
+                    return "SESSIONS " + sessions.getSessionCount();
+                case "LEAVE":
+                    handoffs.execute(this::leave);
+                    return "OK";
+                default:
+                    return null;
+            }
+        } catch (RuntimeException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    // Blocks until this node has left the ring after LEAVE
+    public void awaitLeft() throws InterruptedException {
+        left.await();
+    }
+
+    private synchronized boolean install(long version, ShardRing ring) {
+        View current = view;
+        if (version <= current.version) {
+            return false;
+        }
+        view = newView(version, ring, current.ring, current.isWaiting() ? current : null);
+        handoffs.execute(this::handOff);
+        return true;
+    }
+
+    private View newView(long version, ShardRing ring, ShardRing previous, View before) {
+        View next = new View(version, ring, previous, before);
+        for (String node : previous.getNodes()) {
+            if (!node.equals(self) && doneVersions.getOrDefault(node, -1L) < version) {
+                next.donors.add(node);
+            }
+        }
+        return next;
+    }
+
+    private void done(String node, long version) {
+        doneVersions.merge(node, version, Math::max);
+        for (View v = view; v != null; v = v.before) {
+            if (version >= v.version) {
+                v.donors.remove(node);
+            }
+        }
+    }
+
+    // Installs a handed-over session unless the one held for the key is at least as far along,
+    // which is the case when the sender did not see this node's reply and sent it again
+    private void adopt(long key, long generation, GameSessionManager.Handoff handoff) {
+        keyed.compute(key, (k, current) -> {
+            boolean live = current != null && sessions.hasSession(current);
+            if (live && generations.getOrDefault(k, 0L) >= generation) {
+                return current;
+            }
+            long id = sessions.attachSession(handoff);
+            if (live) {
+                sessions.removeSession(current); // A fresh game started here before the real one arrived
+            }
+            generations.put(k, generation);
+            return id;
+        });
+    }
+
+    // Streams the sessions this node no longer owns to their owners, one pipelined batch per owner,
+    // then reports DONE to every member that got all of its keys. Keys without an OK of their own
+    // are attached here again, under their old generation, and a retry is scheduled; keys that were
+    // acknowledged stay with the receiver even if the rest of the batch failed.
+    private void handOff() {
+        View current = view;
+        Map<String, List<Long>> keysByOwner = new HashMap<>();
+        Map<String, List<GameSessionManager.Handoff>> statesByOwner = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : keyed.entrySet()) {
+            String owner = current.ring.owner(entry.getKey());
+            if (owner == null || owner.equals(self)) {
+                continue;
+            }
+            GameSessionManager.Handoff handoff = sessions.detachSession(entry.getValue());
+            keyed.remove(entry.getKey(), entry.getValue());
+            if (handoff != null) {
+                keysByOwner.computeIfAbsent(owner, o -> new ArrayList<>()).add(entry.getKey());
+                statesByOwner.computeIfAbsent(owner, o -> new ArrayList<>()).add(handoff);
+            }
+        }
+        Set<String> unfinished = new HashSet<>();
+        for (Map.Entry<String, List<Long>> batch : keysByOwner.entrySet()) {
+            List<Long> keys = batch.getValue();
+            List<GameSessionManager.Handoff> states = statesByOwner.get(batch.getKey());
+            List<String> lines = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                GameSessionManager.Handoff state = states.get(i);
+                long generation = generations.getOrDefault(keys.get(i), 0L) + 1;
+                lines.add("ADOPT " + keys.get(i) + " " + generation + " " + HexFormat.of().formatHex(state.getState()) + " " + state.getMillisLeft());
+            }
+            List<String> replies = new ArrayList<>(keys.size());
+            try {
+                request(batch.getKey(), secret, lines, replies);
+            } catch (IOException e) {
+                System.err.println("Handoff to " + batch.getKey() + " broke off after " + replies.size() + " of " + keys.size() + " replies: "
+                    + e.getMessage());
+            }
+            int kept = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                if (i < replies.size() && replies.get(i).equals("OK")) {
+                    generations.remove(keys.get(i));
+                } else {
+                    keyed.put(keys.get(i), sessions.attachSession(states.get(i)));
+                    kept++;
+                }
+            }
+            if (kept > 0) {
+                System.err.println("Keeping " + kept + " sessions for " + batch.getKey() + " until a retry");
+                unfinished.add(batch.getKey());
+            }
+        }
+        for (String node : current.ring.getNodes()) {
+            if (!node.equals(self) && !unfinished.contains(node)) {
+                try {
+                    request(node, secret, List.of("DONE " + self + " " + current.version));
+                } catch (IOException e) {
+                    System.err.println("Could not reach " + node + ": " + e.getMessage());
+                }
+            }
+        }
+        if (!unfinished.isEmpty()) {
+            if (!retryPending) {
+                retryPending = true;
+                handoffs.schedule(() -> {
+                    retryPending = false;
+                    handOff();
+                }, HANDOFF_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } else if (leaving) {
+            left.countDown();
+        }
+    }
+
+    private void leave() {
+        View current = view;
+        ShardRing remaining = current.ring.without(self);
+        long version = Math.max(current.version + 1, System.currentTimeMillis());
+        leaving = true; // The handoff queued by install, or a retry of it, lets main exit once nothing is left
+        announce(remaining, version);
+        install(version, remaining);
+    }
+
+    // Sends the membership to every other member, and installs it here
+    private void announce(ShardRing ring, long version) {
+        broadcast(ring, version);
+        install(version, ring);
+    }
+
+    private void broadcast(ShardRing ring, long version) {
+        for (String node : ring.getNodes()) {
+            if (!node.equals(self)) {
+                try {
+                    request(node, secret, List.of("RING " + version + " " + ring));
+                } catch (IOException e) {
+                    System.err.println("Could not reach " + node + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Sends the lines to a node on a fresh peer connection and returns its reply to each
+    static List<String> request(String node, String secret, List<String> lines) throws IOException {
+        List<String> replies = new ArrayList<>(lines.size());
+        request(node, secret, lines, replies);
+        return replies;
+    }
+
+    // Same, adding replies as they arrive, so that after an IOException the replies that did come
+    // back are in replies, in line order
+    static void request(String node, String secret, List<String> lines, List<String> replies) throws IOException {
+        int colon = node.lastIndexOf(':');
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1))), PEER_TIMEOUT_MILLIS);
+            socket.setSoTimeout(PEER_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            writer.write("PEER " + secret + "\n");
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+            String admitted = reader.readLine();
+            if (!"OK".equals(admitted)) {
+                throw new IOException(node + " did not admit this peer: " + admitted);
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                String reply = reader.readLine();
+                if (reply == null) {
+                    throw new IOException(node + " closed the connection");
+                }
+                replies.add(reply);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: SHARD_SECRET=... java ShardNode <host:port> <host:port,host:port,...> [reactors] [rulesFile]");
+            return;
+        }
+        String secret = System.getenv("SHARD_SECRET");
+        if (secret == null || secret.isEmpty()) {
+            System.err.println("SHARD_SECRET must be set to the cluster's shared secret");
+            System.exit(2);
+        }
+        String self = args[0];
+        ShardRing members = ShardRing.parse(args[1]).with(self);
+        int reactors = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Supplier<GameRules> rules = GameRules::defaults;
+        if (args.length > 3) {
+            GameRulesFile rulesFile = new GameRulesFile(Paths.get(args[3]));
+            rulesFile.watch(2_000);
+            rules = rulesFile;
+        }
+        ShardNode node = new ShardNode(self, secret, members, reactors, rules);
+        node.start();
+        System.out.println("Shard node " + self + " serving, members " + members);
+        // Housekeeping as in GameServer, until LEAVE has handed everything off
+        long tick = 0;
+        while (!node.left.await(100, TimeUnit.MILLISECONDS)) {
+            node.sessions.expireDeadlines();
+            if (++tick % 600 == 0) {
+                node.sessions.expireIdleSessions();
+                node.keyed.values().removeIf(id -> !node.sessions.hasSession(id));
+                for (Long key : node.generations.keySet()) {
+                    node.keyed.compute(key, (k, id) -> { // Under the key's lock, so no adopt of it is half done
+                        if (id == null) {
+                            node.generations.remove(k);
+                        }
+                        return id;
+                    });
+                }
+            }
+        }
+        System.out.println("Shard node " + self + " left the ring");
+        node.close();
+    }
+}
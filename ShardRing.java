@@ -0,0 +1,92 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+// Consistent-hash placement of session keys on nodes. Every node owns VIRTUAL_NODES points on a
+// 64-bit ring and a key belongs to the first point at or after its hash, so adding or removing a node
+// only moves the keys of the ranges next to its own points, about 1/n of them, spread over all the
+// other nodes. Immutable; a membership change builds a new ring. Nodes are named "host:port".
+public final class ShardRing {
+    static final int VIRTUAL_NODES = 128;
+
+    private final List<String> nodes; // Sorted, so equal memberships print and compare the same
+    private final long[] points; // Sorted hash positions
+    private final String[] owners; // Node of each point
+
+    public ShardRing(Collection<String> members) {
+        nodes = List.copyOf(new TreeSet<>(members));
+        points = new long[nodes.size() * VIRTUAL_NODES];
+        owners = new String[points.length];
+        long[][] placed = new long[points.length][];
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                placed[n * VIRTUAL_NODES + v] = new long[] {hash(nodes.get(n) + "#" + v), n};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = nodes.get((int) placed[i][1]);
+        }
+    }
+
+    // "host:port,host:port"; an empty string is the empty ring
+    public static ShardRing parse(String members) {
+        return new ShardRing(members.isEmpty() ? List.of() : Arrays.asList(members.split(",")));
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    // The node that owns the key, or null on an empty ring
+    public String owner(long key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, mix(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public ShardRing with(String node) {
+        TreeSet<String> members = new TreeSet<>(nodes);
+        members.add(node);
+        return new ShardRing(members);
+    }
+
+    public ShardRing without(String node) {
+        TreeSet<String> members = new TreeSet<>(nodes);
+        members.remove(node);
+        return new ShardRing(members);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", nodes);
+    }
+
+    // FNV-1a over the UTF-8 bytes, then the same finaliser keys get
+    private static long hash(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    // SplitMix64 finaliser: sequential keys land all over the ring
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
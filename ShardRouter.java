@@ -0,0 +1,326 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Client side of a ShardNode cluster: sends each command to the node that owns its session key,
+// binding the key first (SESSION <key>), and follows MOVED and RETRY until a node answers. MOVED
+// also refreshes the router's ring from the node that sent it, which takes the cluster's secret.
+// One connection per node.
+// As a program it is a rebalance drill on loopback: it starts node JVMs, plays games on every key
+// while one node joins and another leaves, and checks that no game or point went missing.
+//   java ShardRouter [keys] [nodes]
+public class ShardRouter implements Closeable {
+    private static final int MAX_REDIRECTS = 10_000;
+
+    private volatile ShardRing ring;
+    private final String secret;
+    private long ringVersion = -1;
+    private final Map<String, Link> links = new HashMap<>();
+    private long redirects;
+    private long retries;
+
+    private static final class Link {
+        final Socket socket;
+        final Writer writer;
+        final BufferedReader reader;
+
+        Link(String node) throws IOException {
+            int colon = node.lastIndexOf(':');
+            socket = new Socket(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)));
+            socket.setTcpNoDelay(true);
+            writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        }
+
+        String readLine() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("connection closed");
+            }
+            return line;
+        }
+    }
+
+    public ShardRouter(ShardRing ring, String secret) {
+        this.ring = ring;
+        this.secret = secret;
+    }
+
+    // Sends one game command for the key's session and returns the game's answer
+    public synchronized String send(long key, String command) throws IOException, InterruptedException {
+        String node = ring.owner(key);
+        for (int attempt = 0; attempt < MAX_REDIRECTS; attempt++) {
+            Link link;
+            try {
+                link = link(node);
+            } catch (IOException e) {
+                // The node has gone; its keys are somewhere else by now
+                links.remove(node);
+                refreshFromAny();
+                node = ring.owner(key);
+                Thread.sleep(1);
+                continue;
+            }
+            String bound;
+            String reply;
+            try {
+                link.writer.write("SESSION " + key + "\n" + command + "\n");
+                link.writer.flush();
+                bound = link.readLine();
+                reply = link.readLine();
+            } catch (IOException e) {
+                closeLink(node);
+                continue;
+            }
+            String moved = bound.startsWith("MOVED ") ? bound : reply.startsWith("MOVED ") ? reply : null;
+            if (moved != null) {
+                redirects++;
+                node = moved.substring("MOVED ".length());
+                refresh(node);
+            } else if (bound.equals("RETRY") || reply.equals("RETRY")) {
+                retries++;
+                Thread.sleep(1);
+            } else {
+                return reply;
+            }
+        }
+        throw new IOException("no node answered for key " + key);
+    }
+
+    public synchronized long getRedirects() {
+        return redirects;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (String node : new ArrayList<>(links.keySet())) {
+            closeLink(node);
+        }
+    }
+
+    private Link link(String node) throws IOException {
+        Link link = links.get(node);
+        if (link == null) {
+            link = new Link(node);
+            links.put(node, link);
+        }
+        return link;
+    }
+
+    private void closeLink(String node) {
+        Link link = links.remove(node);
+        if (link != null) {
+            try {
+                link.socket.close();
+            } catch (IOException ignored) {
+                // Already gone
+            }
+        }
+    }
+
+    // Adopts the node's ring if it is newer than the one in use
+    private void refresh(String node) {
+        try {
+            String[] view = ShardNode.request(node, secret, List.of("VIEW")).get(0).split(" ");
+            long version = Long.parseLong(view[1]);
+            if (version > ringVersion) {
+                ringVersion = version;
+                ring = ShardRing.parse(view.length > 2 ? view[2] : "");
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep the ring; the next MOVED points the way
+        }
+    }
+
+    private void refreshFromAny() {
+        for (String node : ring.getNodes()) {
+            refresh(node);
+        }
+    }
+
+    // What the drill knows about one key's current game
+    private static final class Play {
+        int low;
+        int high;
+        int guesses;
+        int attemptsLeft;
+        int points;
+        int games;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int nodeCount = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int gamesPerKey = 4;
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i <= nodeCount; i++) {
+            try (ServerSocket probe = new ServerSocket(0)) {
+                nodes.add("127.0.0.1:" + probe.getLocalPort());
+            }
+        }
+        String joiner = nodes.remove(nodeCount);
+        String secret = Long.toHexString(new SecureRandom().nextLong()); // Shared by the drill's nodes only
+        String leaver = nodes.get(0);
+        ShardRing initial = new ShardRing(nodes);
+        Map<String, Process> processes = new HashMap<>();
+        try {
+            for (String node : nodes) {
+                processes.put(node, startNode(node, initial, secret));
+            }
+            for (String node : nodes) {
+                awaitView(node, initial, secret);
+            }
+            GameRules rules = GameRules.defaults();
+            Map<Long, Play> plays = new HashMap<>();
+            int failures = 0;
+            long start = System.nanoTime();
+            try (ShardRouter router = new ShardRouter(initial, secret)) {
+                for (long key = 1; key <= keys; key++) {
+                    Play play = new Play();
+                    plays.put(key, play);
+                    failures += newGame(router, key, play, rules);
+                }
+                int round = 0;
+                boolean playing = true;
+                while (playing) {
+                    round++;
+                    if (round == 3) {
+                        processes.put(joiner, startNode(joiner, initial.with(joiner), secret));
+                        System.out.println("round " + round + ": " + joiner + " joining");
+                    } else if (round == 6) {
+                        awaitView(leaver, initial.with(joiner), secret);
+                        System.out.println("round " + round + ": " + leaver + " leaving, " + ShardNode.request(leaver, secret, List.of("LEAVE")).get(0));
+                    }
+                    playing = false;
+                    for (long key = 1; key <= keys; key++) {
+                        Play play = plays.get(key);
+                        if (play.games < gamesPerKey) {
+                            failures += step(router, key, play, rules);
+                            playing |= play.games < gamesPerKey;
+                        }
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (!processes.get(leaver).waitFor(10, TimeUnit.SECONDS)) {
+                    System.out.println("FAIL " + leaver + " did not exit after LEAVE");
+                    failures++;
+                }
+                long total = 0;
+                for (String node : initial.with(joiner).without(leaver).getNodes()) {
+                    String count = ShardNode.request(node, secret, List.of("SESSIONS")).get(0);
+                    System.out.println("  " + node + " " + count);
+                    total += Long.parseLong(count.substring("SESSIONS ".length()));
+                }
+                if (total != keys) {
+                    System.out.println("FAIL " + total + " sessions for " + keys + " keys");
+                    failures++;
+                }
+                System.out.printf("%d keys x %d games in %.2f s, %d redirects, %d retries: %s%n", keys, gamesPerKey, seconds,
+                    router.getRedirects(), router.getRetries(), failures == 0 ? "OK" : failures + " failures");
+            }
+        } finally {
+            for (Process process : processes.values()) {
+                process.destroy();
+            }
+        }
+    }
+
+    // One guess of a binary search, checked against what the drill expects of the session
+    private static int step(ShardRouter router, long key, Play play, GameRules rules) throws IOException, InterruptedException {
+        int guess = (play.low + play.high) >>> 1;
+        String reply = router.send(key, "GUESS " + guess);
+        play.guesses++;
+        String[] words = reply.split(" ");
+        switch (words[0]) {
+            case "LOW":
+            case "HIGH":
+                if (Integer.parseInt(words[1]) != play.attemptsLeft - play.guesses) {
+                    return fail(key, "expected " + (play.attemptsLeft - play.guesses) + " attempts left: " + reply);
+                }
+                if (words[0].equals("LOW")) {
+                    play.low = guess + 1;
+                } else {
+                    play.high = guess - 1;
+                }
+                return 0;
+            case "WIN":
+                play.points += rules.getWinPoints();
+                if (Integer.parseInt(words[1]) != play.guesses || Integer.parseInt(words[2]) != play.points) {
+                    return fail(key, "expected WIN " + play.guesses + " " + play.points + ": " + reply);
+                }
+                break;
+            case "LOSE":
+                if (play.guesses != play.attemptsLeft) {
+                    return fail(key, "lost after " + play.guesses + " guesses: " + reply);
+                }
+                break;
+            default:
+                return fail(key, "after GUESS " + guess + ": " + reply);
+        }
+        play.games++;
+        return play.games < 4 ? newGame(router, key, play, rules) : 0;
+    }
+
+    private static int newGame(ShardRouter router, long key, Play play, GameRules rules) throws IOException, InterruptedException {
+        String reply = router.send(key, "NEW");
+        if (!reply.startsWith("READY ")) {
+            return fail(key, "after NEW: " + reply);
+        }
+        play.low = rules.getMinNumber();
+        play.high = rules.getMaxNumber();
+        play.guesses = 0;
+        play.attemptsLeft = Integer.parseInt(reply.substring("READY ".length()));
+        return 0;
+    }
+
+    private static int fail(long key, String message) {
+        System.out.println("FAIL key " + key + ": " + message);
+        return 1;
+    }
+
+    private static Process startNode(String node, ShardRing members, String secret) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ShardNode", node, members.toString(), "2");
+        builder.environment().put("SHARD_SECRET", secret);
+        return builder
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    }
+
+    // Waits until the node is up and has the given membership
+    private static void awaitView(String node, ShardRing members, String secret) throws InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            try {
+                String view = ShardNode.request(node, secret, List.of("VIEW")).get(0);
+                if (view.endsWith(" " + members)) {
+                    return;
+                }
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Picks the secret number for each new game. The default draws from ThreadLocalRandom, so
+// concurrent resets never share a generator the way Math.random() does.
+public interface TargetSource {
+    // Uniform in 0 (inclusive) to bound (exclusive)
+    int nextTarget(int bound);
+
+    static TargetSource threadLocal() {
+        return bound -> ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    // One SplittableRandom per thread, each split from a root seeded with seed
+    static TargetSource splittable(long seed) {
+        SplittableRandom root = new SplittableRandom(seed);
+        ThreadLocal<SplittableRandom> perThread = ThreadLocal.withInitial(() -> {
+            synchronized (root) {
+                return root.split();
+            }
+        });
+        return bound -> perThread.get().nextInt(bound);
+    }
+
+    // Fully reproducible sequence for a single game or a single thread; not safe to share between threads
+    static TargetSource seeded(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        return random::nextInt;
+    }
+}
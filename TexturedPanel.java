@@ -0,0 +1,311 @@
+import java.awt.*;
+import javax.swing.*;
+import java.awt.event.HierarchyEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+// Custom panel with themed background
+class TexturedPanel extends JPanel {
+    private static final Font SYMBOL_FONT = new Font("Serif", Font.BOLD, 20);
+    private static final String[] SYMBOL_VALUES = {"?", "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "★", "✦"};
+    private static final int DEFAULT_SYMBOL_COUNT = 35;
+    private static final int FRAME_MILLIS = 50;
+    private static final float PHASE_STEP = 0.05f;
+    private static final float TWO_PI = 2 * (float) Math.PI;
+
+    // Twinkle alpha (100 +/- 50) sampled around the sine wave, and one composite per alpha value, built once
+    private static final int TWINKLE_STEPS = 256;
+    private static final int[] TWINKLE_ALPHA = new int[TWINKLE_STEPS];
+    private static final AlphaComposite[] ALPHA_PALETTE = new AlphaComposite[256];
+
+    static {
+        for (int step = 0; step < TWINKLE_STEPS; step++) {
+            TWINKLE_ALPHA[step] = Math.min((int) (100 + 50 * Math.sin(step * TWO_PI / TWINKLE_STEPS)), 255);
+        }
+        for (int alpha = 0; alpha < ALPHA_PALETTE.length; alpha++) {
+            ALPHA_PALETTE[alpha] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha / 255f);
+        }
+    }
+
+    private static final int TEXTURE_WIDTH = 500;
+    private static final int TEXTURE_HEIGHT = 450;
+    private static final Color GRADIENT_TOP = new Color(10, 50, 60); // Deep teal
+    private static final Color GRADIENT_BOTTOM = new Color(20, 80, 40); // Dark green
+
+    // One background texture for every panel, drawn off the EDT; panels paint the bare gradient until it is ready
+    private static CompletableFuture<BufferedImage> sharedTexture;
+
+    private final boolean showGuessing;
+    private final CompletableFuture<BufferedImage> texture;
+    private BufferedImage scaledTexture; // texture pre-scaled to the current panel size
+    private GradientPaint glow; // Overlay for the current panel height
+    private float twinklePhase;
+
+    // Moving symbols as parallel arrays: position, velocity, glyph index and twinkle offset
+    private float[] xs;
+    private float[] ys;
+    private float[] vxs;
+    private float[] vys;
+    private float[] phaseOffsets;
+    private byte[] glyphs;
+
+    // Every symbol pre-rendered once in light teal, side by side in one image, so drawing a symbol
+    // is an image blit with an alpha composite rather than text layout and rasterisation
+    private static final class GlyphAtlas {
+        static final BufferedImage IMAGE;
+        static final int CELL_WIDTH;
+        static final int CELL_HEIGHT;
+        static final int ASCENT; // Distance from the top of a cell to the glyph baseline
+        static final int PAD = 2;
+
+        static {
+            BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D probeGraphics = probe.createGraphics();
+            FontMetrics metrics = probeGraphics.getFontMetrics(SYMBOL_FONT);
+            int maxAdvance = 0;
+            for (String value : SYMBOL_VALUES) {
+                maxAdvance = Math.max(maxAdvance, metrics.stringWidth(value));
+            }
+            probeGraphics.dispose();
+            CELL_WIDTH = maxAdvance + 2 * PAD;
+            CELL_HEIGHT = metrics.getAscent() + metrics.getDescent() + 2 * PAD;
+            ASCENT = metrics.getAscent() + PAD;
+
+            IMAGE = new BufferedImage(CELL_WIDTH * SYMBOL_VALUES.length, CELL_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = IMAGE.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setFont(SYMBOL_FONT);
+            g2d.setColor(new Color(180, 255, 200)); // Light teal
+            for (int i = 0; i < SYMBOL_VALUES.length; i++) {
+                g2d.drawString(SYMBOL_VALUES[i], i * CELL_WIDTH + PAD, ASCENT);
+            }
+            g2d.dispose();
+        }
+    }
+
+    // One Swing timer drives every animated panel; panels without symbols never repaint on their own
+    private static final class AnimationClock {
+        private static final List<TexturedPanel> PANELS = new ArrayList<>();
+        private static final Timer TIMER = new Timer(FRAME_MILLIS, e -> tick());
+
+        static void register(TexturedPanel panel) {
+            if (PANELS.contains(panel)) {
+                return;
+            }
+            PANELS.add(panel);
+            if (!TIMER.isRunning()) {
+                TIMER.start();
+            }
+        }
+
+        static void unregister(TexturedPanel panel) {
+            PANELS.remove(panel);
+            if (PANELS.isEmpty()) {
+                TIMER.stop();
+            }
+        }
+
+        private static void tick() {
+            for (TexturedPanel panel : PANELS) {
+                if (panel.isShowing()) {
+                    panel.advanceFrame();
+                }
+            }
+        }
+    }
+
+    public TexturedPanel(boolean showGuessing) {
+        this(showGuessing, DEFAULT_SYMBOL_COUNT);
+    }
+
+    public TexturedPanel(boolean showGuessing, int symbolCount) {
+        this.showGuessing = showGuessing;
+        setOpaque(true);
+        texture = prepareTexture();
+        if (!texture.isDone()) {
+            texture.thenRun(this::repaint);
+        }
+        // Initialize symbols for animation
+        if (showGuessing) {
+            Random rand = new Random();
+            xs = new float[symbolCount];
+            ys = new float[symbolCount];
+            vxs = new float[symbolCount];
+            vys = new float[symbolCount];
+            phaseOffsets = new float[symbolCount];
+            glyphs = new byte[symbolCount];
+            for (int i = 0; i < symbolCount; i++) {
+                float angle = rand.nextFloat() * TWO_PI;
+                float speed = 0.5f + rand.nextFloat() * 1.0f; // Speed between 0.5 and 1.5 pixels per frame
+                xs[i] = rand.nextInt(500);
+                ys[i] = rand.nextInt(450);
+                vxs[i] = (float) Math.cos(angle) * speed;
+                vys[i] = (float) Math.sin(angle) * speed;
+                phaseOffsets[i] = rand.nextFloat() * TWO_PI;
+                glyphs[i] = (byte) rand.nextInt(SYMBOL_VALUES.length);
+            }
+            // Animate only while on screen, so hidden panels never keep the shared clock running
+            addHierarchyListener(e -> {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                    if (isShowing()) {
+                        AnimationClock.register(this);
+                    } else {
+                        AnimationClock.unregister(this);
+                    }
+                }
+            });
+        }
+    }
+
+    // Starts generating the shared texture in the background if nobody has yet; call it early at
+    // startup so the texture is drawn while Swing initialises
+    static synchronized CompletableFuture<BufferedImage> prepareTexture() {
+        if (sharedTexture == null) {
+            sharedTexture = CompletableFuture.supplyAsync(TexturedPanel::generateTexture);
+        }
+        return sharedTexture;
+    }
+
+    private static BufferedImage generateTexture() {
+        int w = TEXTURE_WIDTH;
+        int h = TEXTURE_HEIGHT;
+        BufferedImage texture = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = texture.createGraphics();
+        Random rand = new Random();
+
+        // Teal-to-green gradient background
+        GradientPaint cosmicGradient = new GradientPaint(0, 0, GRADIENT_TOP, 0, h, GRADIENT_BOTTOM);
+        g2d.setPaint(cosmicGradient);
+        g2d.fillRect(0, 0, w, h);
+
+        // Add starry specks
+        for (int i = 0; i < 100; i++) {
+            int x = rand.nextInt(w);
+            int y = rand.nextInt(h);
+            int size = rand.nextInt(3) + 1;
+            g2d.setColor(new Color(255, 255, 255, 100 + rand.nextInt(100)));
+            g2d.fillOval(x, y, size, size);
+        }
+
+        g2d.dispose();
+        return texture;
+    }
+
+    // Moves the symbols one step and repaints the area they cover before and after the move
+    void advanceFrame() {
+        twinklePhase = (twinklePhase + PHASE_STEP) % TWO_PI;
+        if (xs == null || xs.length == 0) {
+            return;
+        }
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < xs.length; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        updateSymbols();
+        for (int i = 0; i < xs.length; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        int left = (int) minX - GlyphAtlas.PAD - 1;
+        int top = (int) minY - GlyphAtlas.ASCENT - 1;
+        repaint(left, top, (int) maxX + GlyphAtlas.CELL_WIDTH + 2 - left, (int) maxY + GlyphAtlas.CELL_HEIGHT + 2 - top);
+    }
+
+    // Straight-line loops over primitive arrays so the JIT can keep them in registers and vectorise
+    private void updateSymbols() {
+        float w = getWidth();
+        float h = getHeight();
+        for (int i = 0; i < xs.length; i++) {
+            // Update position
+            float x = xs[i] + vxs[i];
+            float y = ys[i] + vys[i];
+            // Bounce off edges
+            vxs[i] = (x < 0 || x > w) ? -vxs[i] : vxs[i];
+            vys[i] = (y < 0 || y > h) ? -vys[i] : vys[i];
+            // Keep within bounds
+            xs[i] = Math.max(0, Math.min(w, x));
+            ys[i] = Math.max(0, Math.min(h, y));
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+
+        // Draw cached texture, scaled once per panel size; until it exists, just its gradient
+        BufferedImage source = texture.getNow(null);
+        if (source == null) {
+            g2d.setPaint(new GradientPaint(0, 0, GRADIENT_TOP, 0, h, GRADIENT_BOTTOM));
+            g2d.fillRect(0, 0, w, h);
+        } else {
+            if (scaledTexture == null || scaledTexture.getWidth() != w || scaledTexture.getHeight() != h) {
+                scaledTexture = getGraphicsConfiguration() != null
+                    ? getGraphicsConfiguration().createCompatibleImage(w, h)
+                    : new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                Graphics2D scaled = scaledTexture.createGraphics();
+                scaled.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                scaled.drawImage(source, 0, 0, w, h, null);
+                scaled.dispose();
+            }
+            g2d.drawImage(scaledTexture, 0, 0, null);
+        }
+
+        // Draw dynamic symbols if enabled, as alpha-composited blits from the glyph atlas
+        if (showGuessing && xs != null) {
+            Composite original = g2d.getComposite();
+            Rectangle clip = g2d.getClipBounds();
+            int clipLeft = clip != null ? clip.x - GlyphAtlas.CELL_WIDTH : Integer.MIN_VALUE;
+            int clipRight = clip != null ? clip.x + clip.width : Integer.MAX_VALUE;
+            int clipTop = clip != null ? clip.y - GlyphAtlas.CELL_HEIGHT : Integer.MIN_VALUE;
+            int clipBottom = clip != null ? clip.y + clip.height : Integer.MAX_VALUE;
+            float phaseToStep = TWINKLE_STEPS / TWO_PI;
+            for (int i = 0; i < xs.length; i++) {
+                int dx = (int) xs[i] - GlyphAtlas.PAD;
+                int dy = (int) ys[i] - GlyphAtlas.ASCENT;
+                if (dx < clipLeft || dx > clipRight || dy < clipTop || dy > clipBottom) {
+                    continue;
+                }
+                int step = (int) ((twinklePhase + phaseOffsets[i]) * phaseToStep) & (TWINKLE_STEPS - 1);
+                g2d.setComposite(ALPHA_PALETTE[TWINKLE_ALPHA[step]]);
+                int sx = glyphs[i] * GlyphAtlas.CELL_WIDTH;
+                g2d.drawImage(GlyphAtlas.IMAGE,
+                    dx, dy, dx + GlyphAtlas.CELL_WIDTH, dy + GlyphAtlas.CELL_HEIGHT,
+                    sx, 0, sx + GlyphAtlas.CELL_WIDTH, GlyphAtlas.CELL_HEIGHT, null);
+            }
+            g2d.setComposite(original);
+        }
+
+        // Add glowing overlay
+        if (glow == null || glow.getPoint2().getY() != h) {
+            glow = new GradientPaint(
+                0, 0, new Color(255, 255, 255, 20),
+                0, h, new Color(100, 255, 150, 50) // Light teal-green
+            );
+        }
+        g2d.setPaint(glow);
+        g2d.fillRect(0, 0, w, h);
+        if (showGuessing) {
+            GameMetrics.shared().recordFrame(System.nanoTime() - start);
+        }
+    }
+}
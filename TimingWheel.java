@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Hierarchical timing wheel: four levels of 64 slots, where each level's slot spans a full turn of the
+// level below. Scheduling and cancelling are O(1) linked-list operations, and advancing only touches
+// the slots whose time has come, cascading far-off timeouts down a level as their turn approaches.
+// Expired payloads are handed back as one batch per advance() call. All methods are synchronized.
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Timeout<T>[][] wheels;
+    private long currentTick;
+    private int size;
+
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int level = -1; // -1 once expired or cancelled
+        private int slot;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public boolean isPending() {
+            return level >= 0;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheels = new Timeout[LEVELS][SLOTS];
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Fires on the first advance() at or after deadlineMillis, rounded up to a whole tick
+    public synchronized Timeout<T> schedule(T payload, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(payload, (deadlineMillis + tickMillis - 1) / tickMillis);
+        place(timeout, currentTick + 1); // The current tick's slot has already been expired
+        size++;
+        return timeout;
+    }
+
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.level < 0) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    // Moves the wheel up to nowMillis and returns everything that expired on the way
+    public synchronized List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<T> expired = null;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade(1);
+            Timeout<T> timeout = wheels[0][(int) (currentTick & SLOT_MASK)];
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                unlink(timeout);
+                size--;
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(timeout.payload);
+                timeout = next;
+            }
+        }
+        return expired == null ? Collections.emptyList() : expired;
+    }
+
+    // When a lower level completes a turn, the next slot of this level is re-placed into the levels below;
+    // higher levels go first so their timeouts can land in this level's slot before it is emptied
+    private void cascade(int level) {
+        if (level >= LEVELS || (currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+            return;
+        }
+        cascade(level + 1);
+        int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Timeout<T> timeout = wheels[level][slot];
+        wheels[level][slot] = null;
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            place(timeout, currentTick); // advance() expires the current tick's slot right after cascading
+            timeout = next;
+        }
+    }
+
+    private void place(Timeout<T> timeout, long earliestTick) {
+        long deadline = Math.max(timeout.deadlineTick, earliestTick);
+        long delta = deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        if (delta >= (1L << (SLOT_BITS * LEVELS))) {
+            // Beyond the top level's reach: park it in the top slot that comes round last, to be re-placed from there
+            deadline = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+        int slot = (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = wheels[level][slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        wheels[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheels[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = -1;
+    }
+}
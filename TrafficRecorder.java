@@ -0,0 +1,179 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+// Records the requests made of game sessions as a timestamped stream, for TrafficReplayer: every
+// guess, hint, enchantment and time query whatever its outcome, rejected and out-of-range guesses
+// included, plus what the server does to a session on its own (timeouts, closing it). Each NEW
+// carries the target the game got, so a replay plays the same games whatever its own random source.
+// Appends go into a buffer that is written out when it fills up and on close; a crash loses the
+// buffered tail, and load() stops at a torn last record.
+//   file: magic, then per request: microseconds since the previous one and session id (varints),
+//         request code byte, value (zig-zag varint)
+// Request codes match GameEvent's for the kinds both have, so recordings of version 1, which held
+// game events, load as the requests that changed something.
+public class TrafficRecorder implements Closeable {
+    private static final int MAGIC = 0x47545232;
+    private static final int MAGIC_V1 = 0x47545231;
+    private static final int MAX_RECORD_BYTES = 10 + 10 + 1 + 5;
+
+    private final FileChannel channel;
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(64 * 1024);
+    private final LongSupplier clockMicros;
+    private long lastMicros;
+    private long requestCount;
+    private boolean closed;
+
+    public enum Request {
+        NEW, // A game started; value is its target
+        GUESS, // value is the guess, accepted or not
+        HINT, // value unused
+        ENCHANT, // value is the Enchantment ordinal, activated or not
+        POINTS, // Points added from outside the game, e.g. a ledger balance; value is the delta
+        TIMEOUT, // The server timed the game out; value unused
+        END, // The session was closed; value unused
+        TIME; // Time left was asked for; value unused
+
+        private static final Request[] VALUES = values();
+
+        static Request fromCode(int code) {
+            return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+        }
+    }
+
+    // What was recorded, read back into memory in recording order
+    public static final class Recording {
+        final long[] micros; // Since the start of the recording
+        final long[] sessionIds;
+        final Request[] requests;
+        final int[] values;
+        final int size;
+
+        Recording(long[] micros, long[] sessionIds, Request[] requests, int[] values, int size) {
+            this.micros = micros;
+            this.sessionIds = sessionIds;
+            this.requests = requests;
+            this.values = values;
+            this.size = size;
+        }
+
+        public int getRequestCount() {
+            return size;
+        }
+
+        public long getDurationMicros() {
+            return size == 0 ? 0 : micros[size - 1];
+        }
+    }
+
+    public TrafficRecorder(Path file) throws IOException {
+        this(file, () -> System.nanoTime() / 1_000);
+    }
+
+    // clockMicros may be virtual, e.g. a simulation's own clock, as long as it never goes backwards
+    public TrafficRecorder(Path file, LongSupplier clockMicros) throws IOException {
+        this.clockMicros = clockMicros;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        batch.putInt(MAGIC);
+        lastMicros = clockMicros.getAsLong();
+    }
+
+    // Requests after close are dropped, so recording can stop while the games carry on
+    public synchronized void record(long sessionId, Request request, int value) {
+        if (closed) {
+            return;
+        }
+        if (batch.remaining() < MAX_RECORD_BYTES) {
+            writeBatch();
+        }
+        long delta = Math.max(0, clockMicros.getAsLong() - lastMicros);
+        lastMicros += delta;
+        GameStateCodec.putVarint(batch, delta);
+        GameStateCodec.putVarint(batch, sessionId);
+        batch.put((byte) request.ordinal());
+        GameStateCodec.putSigned(batch, value);
+        requestCount++;
+    }
+
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeBatch();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeBatch() {
+        batch.flip();
+        try {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    public static Recording load(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        int magic = in.remaining() < 4 ? 0 : in.getInt();
+        if (magic != MAGIC && magic != MAGIC_V1) {
+            throw new IOException("Not a traffic recording: " + file);
+        }
+        int capacity = Math.max(16, in.remaining() / 4);
+        long[] micros = new long[capacity];
+        long[] sessionIds = new long[capacity];
+        Request[] requests = new Request[capacity];
+        int[] values = new int[capacity];
+        int size = 0;
+        long now = 0;
+        while (in.hasRemaining()) {
+            if (size == micros.length) {
+                capacity = size * 2;
+                micros = Arrays.copyOf(micros, capacity);
+                sessionIds = Arrays.copyOf(sessionIds, capacity);
+                requests = Arrays.copyOf(requests, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            try {
+                long delta = GameStateCodec.getVarint(in);
+                long sessionId = GameStateCodec.getVarint(in);
+                Request request = Request.fromCode(in.get());
+                int value = GameStateCodec.getSigned(in);
+                if (request == null) {
+                    break; // Torn or corrupt tail
+                }
+                now += delta;
+                micros[size] = now;
+                sessionIds[size] = sessionId;
+                requests[size] = request;
+                values[size] = value;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                break; // Torn tail
+            }
+            size++;
+        }
+        return new Recording(micros, sessionIds, requests, values, size);
+    }
+}
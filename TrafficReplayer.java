@@ -0,0 +1,339 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Replays a TrafficRecorder recording against NumberGuessingLogic, at the recorded pace, faster, or
+// as fast as possible, and reports throughput, the latency of serving each request and, when paced,
+// how late requests ran against their schedule. Each session's requests run in order on one thread.
+// Every request is replayed, the ones that change nothing included, and answered as GameServer
+// answers it: out-of-range guesses and guesses or enchantments after the game ended are rejected
+// without touching the game. Games run on the recording's virtual clock, so timeouts land where
+// they were recorded at any speed, and any game whose first NEW was not recorded gets a target
+// seeded by its session id. The digest folds every answer into one number: two runs of the same
+// recording agree on it unless game behaviour changed.
+// Recordings come from GameServer (its fifth argument), GameSessionManager.setTrafficRecorder, or
+// the record mode here, which plays seeded synthetic players on a virtual clock:
+//   java TrafficReplayer record <file> [sessions] [gamesPerSession] [seed]
+//   java TrafficReplayer replay <file> [speed: 1, 10, ... or max] [threads] [rulesFile]
+public class TrafficReplayer {
+    private final TrafficRecorder.Recording recording;
+    private final Supplier<GameRules> rulesSource;
+    private final double speed; // 0 for as fast as possible
+    private final int threads;
+
+    // What one run measured
+    public static final class Report {
+        final LatencyHistogram latency = new LatencyHistogram(); // Nanoseconds to serve each request
+        final LatencyHistogram lag = new LatencyHistogram(); // Nanoseconds each request started after its due time
+        long digest;
+        long sessions;
+        double seconds;
+
+        void add(Report other) {
+            latency.add(other.latency);
+            lag.add(other.lag);
+            digest += other.digest;
+            sessions += other.sessions;
+        }
+
+        public long getDigest() {
+            return digest;
+        }
+
+        public double getRequestsPerSecond() {
+            return latency.getCount() / seconds;
+        }
+    }
+
+    // One session being replayed and the running hash of what its game answered
+    private static final class Replayed {
+        final NumberGuessingLogic game;
+        long hash;
+
+        Replayed(NumberGuessingLogic game) {
+            this.game = game;
+        }
+    }
+
+    public TrafficReplayer(TrafficRecorder.Recording recording, Supplier<GameRules> rulesSource, double speed, int threads) {
+        this.recording = recording;
+        this.rulesSource = rulesSource;
+        this.speed = speed;
+        this.threads = threads;
+    }
+
+    public Report run() throws InterruptedException {
+        List<int[]> shares = partition();
+        new NumberGuessingLogic(TargetSource.seeded(0), rulesSource).getHint(); // Rules and hint table built before the clock starts
+        Report[] reports = new Report[threads];
+        List<Thread> running = new ArrayList<>();
+        long startNanos = System.nanoTime() + 10_000_000; // A moment for every thread to start
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            reports[t] = new Report();
+            Thread thread = new Thread(() -> replay(shares.get(index), startNanos, reports[index]), "traffic-replay-" + t);
+            running.add(thread);
+            thread.start();
+        }
+        Report total = new Report();
+        for (int t = 0; t < threads; t++) {
+            running.get(t).join();
+            total.add(reports[t]);
+        }
+        total.seconds = (System.nanoTime() - startNanos) / 1e9;
+        return total;
+    }
+
+    // Request indexes per thread, in recording order, every session on exactly one thread
+    private List<int[]> partition() {
+        int[] counts = new int[threads];
+        int[] owners = new int[recording.size];
+        for (int i = 0; i < recording.size; i++) {
+            owners[i] = (int) Math.floorMod(mix(recording.sessionIds[i]), (long) threads);
+            counts[owners[i]]++;
+        }
+        List<int[]> shares = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            shares.add(new int[counts[t]]);
+        }
+        int[] filled = new int[threads];
+        for (int i = 0; i < recording.size; i++) {
+            shares.get(owners[i])[filled[owners[i]]++] = i;
+        }
+        return shares;
+    }
+
+    private void replay(int[] share, long startNanos, Report report) {
+        Map<Long, Replayed> sessions = new HashMap<>();
+        for (int i : share) {
+            long micros = recording.micros[i];
+            if (speed > 0) {
+                long due = startNanos + (long) (micros * 1_000 / speed);
+                long now = System.nanoTime();
+                while (now < due) {
+                    LockSupport.parkNanos(due - now);
+                    now = System.nanoTime();
+                }
+                report.lag.record(now - due);
+            }
+            long start = System.nanoTime();
+            apply(sessions, recording.sessionIds[i], recording.requests[i], recording.values[i], micros / 1_000, report);
+            report.latency.record(System.nanoTime() - start);
+        }
+        for (Map.Entry<Long, Replayed> entry : sessions.entrySet()) {
+            finish(entry.getKey(), entry.getValue(), report);
+        }
+    }
+
+    private void apply(Map<Long, Replayed> sessions, long sessionId, TrafficRecorder.Request request, int value, long virtualMillis,
+            Report report) {
+        Replayed session = sessions.get(sessionId);
+        if (request == TrafficRecorder.Request.END) {
+            if (session != null) {
+                sessions.remove(sessionId);
+                finish(sessionId, session, report);
+            }
+            return;
+        }
+        if (session == null) {
+            session = new Replayed(new NumberGuessingLogic(TargetSource.seeded(sessionId), rulesSource));
+            session.game.setPrecomputedHints(true);
+            session.game.startClock(virtualMillis);
+            sessions.put(sessionId, session);
+        }
+        NumberGuessingLogic game = session.game;
+        long answer;
+        switch (request) {
+            case NEW:
+                game.apply(GameEvent.RESET, value);
+                game.startClock(virtualMillis);
+                answer = value;
+                break;
+            case GUESS:
+                if (!game.getRules().isInRange(value)) {
+                    answer = GuessResult.OUT_OF_RANGE.ordinal();
+                } else if (game.isTimedOut(virtualMillis)) {
+                    answer = GuessResult.TIME_UP.ordinal();
+                } else if (game.isFinished(virtualMillis)) {
+                    answer = GuessResult.FINISHED.ordinal();
+                } else {
+                    answer = game.guess(value).ordinal();
+                }
+                break;
+            case HINT:
+                answer = game.getHint().hashCode();
+                break;
+            case ENCHANT:
+                boolean known = value >= 0 && value < Enchantment.values().length;
+                answer = known && !game.isFinished(virtualMillis) && game.activateEnchantment(Enchantment.values()[value]) ? 1 : 0;
+                break;
+            case TIME:
+                answer = game.getTimeLeftSeconds(virtualMillis);
+                break;
+            case POINTS:
+                game.addEnchantmentPoints(value);
+                answer = game.getEnchantmentPoints();
+                break;
+            default:
+                game.timeOut();
+                answer = 0;
+                break;
+        }
+        session.hash = (session.hash + request.ordinal()) * 0x9E3779B97F4A7C15L + answer;
+    }
+
+    private static void finish(long sessionId, Replayed session, Report report) {
+        NumberGuessingLogic game = session.game;
+        report.digest += mix(sessionId ^ mix(session.hash + game.getEnchantmentPoints()));
+        report.sessions++;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    // A synthetic player's next move is due at `at`, on the recording's virtual clock
+    private static final class Player implements Comparable<Player> {
+        final long sessionId;
+        final NumberGuessingLogic game;
+        long at;
+        boolean arrived;
+        int gamesLeft;
+        int low;
+        int high;
+
+        Player(long sessionId, NumberGuessingLogic game, long at, int gamesLeft) {
+            this.sessionId = sessionId;
+            this.game = game;
+            this.at = at;
+            this.gamesLeft = gamesLeft;
+        }
+
+        @Override
+        public int compareTo(Player other) {
+            return at != other.at ? Long.compare(at, other.at) : Long.compare(sessionId, other.sessionId);
+        }
+    }
+
+    // Seeded players that arrive over the first ten virtual seconds, think for up to three seconds
+    // between moves, and guess by a jittered binary search, asking for hints and the time left and
+    // buying enchantments along the way; games that run past their deadline time out as
+    // GameSessionManager would time them out
+    public static long recordSynthetic(Path file, int sessionCount, int gamesPerSession, long seed, Supplier<GameRules> rulesSource)
+            throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] clockMicros = new long[1];
+        try (TrafficRecorder recorder = new TrafficRecorder(file, () -> clockMicros[0])) {
+            PriorityQueue<Player> due = new PriorityQueue<>();
+            for (long id = 1; id <= sessionCount; id++) {
+                NumberGuessingLogic game = new NumberGuessingLogic(TargetSource.seeded(seed ^ mix(id)), rulesSource);
+                due.add(new Player(id, game, random.nextLong(10_000_000), gamesPerSession));
+            }
+            while (!due.isEmpty()) {
+                Player player = due.poll();
+                clockMicros[0] = player.at;
+                long nowMillis = player.at / 1_000;
+                NumberGuessingLogic game = player.game;
+                if (!player.arrived) {
+                    player.arrived = true;
+                    int points = random.nextInt(20);
+                    game.addEnchantmentPoints(points);
+                    recorder.record(player.sessionId, TrafficRecorder.Request.POINTS, points);
+                    startGame(player, nowMillis, recorder);
+                } else if (game.getDeadlineMillis() > 1 && game.isTimedOut(nowMillis) && !game.isFinished(0)) {
+                    game.timeOut(); // Pins the deadline at 1, so this happens once per game
+                    recorder.record(player.sessionId, TrafficRecorder.Request.TIMEOUT, 0);
+                } else if (game.isFinished(nowMillis)) {
+                    if (--player.gamesLeft == 0) {
+                        recorder.record(player.sessionId, TrafficRecorder.Request.END, 0);
+                        continue;
+                    }
+                    startGame(player, nowMillis, recorder);
+                } else {
+                    move(player, nowMillis, random, recorder);
+                }
+                player.at += 200_000 + random.nextLong(2_800_000);
+                due.add(player);
+            }
+            return recorder.getRequestCount();
+        }
+    }
+
+    private static void startGame(Player player, long nowMillis, TrafficRecorder recorder) {
+        player.game.resetGame();
+        player.game.startClock(nowMillis);
+        recorder.record(player.sessionId, TrafficRecorder.Request.NEW, player.game.getTargetNumber());
+        player.low = player.game.getRules().getMinNumber();
+        player.high = player.game.getRules().getMaxNumber();
+    }
+
+    private static void move(Player player, long nowMillis, SplittableRandom random, TrafficRecorder recorder) {
+        NumberGuessingLogic game = player.game;
+        int roll = random.nextInt(100);
+        if (roll < 10) {
+            Enchantment enchantment = Enchantment.values()[random.nextInt(Enchantment.values().length)];
+            recorder.record(player.sessionId, TrafficRecorder.Request.ENCHANT, enchantment.ordinal());
+            game.activateEnchantment(enchantment);
+        } else if (roll < 30) {
+            recorder.record(player.sessionId, TrafficRecorder.Request.HINT, 0);
+            game.getHint();
+        } else if (roll < 40) {
+            recorder.record(player.sessionId, TrafficRecorder.Request.TIME, 0);
+            game.getTimeLeftSeconds(nowMillis);
+        } else {
+            int span = player.high - player.low;
+            int guess = player.low + span / 2 + (span > 4 ? random.nextInt(span / 4 + 1) - span / 8 : 0);
+            recorder.record(player.sessionId, TrafficRecorder.Request.GUESS, guess);
+            GuessResult result = game.guess(guess);
+            if (result == GuessResult.TOO_LOW) {
+                player.low = guess + 1;
+            } else if (result == GuessResult.TOO_HIGH) {
+                player.high = guess - 1;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2 || !(args[0].equals("record") || args[0].equals("replay"))) {
+            System.err.println("Usage: java TrafficReplayer record <file> [sessions] [gamesPerSession] [seed]");
+            System.err.println("       java TrafficReplayer replay <file> [speed: 1, 10, ... or max] [threads] [rulesFile]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[1]);
+        if (args[0].equals("record")) {
+            int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+            int games = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+            long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+            long requests = recordSynthetic(file, sessions, games, seed, GameRules::defaults);
+            System.out.printf("Recorded %,d requests from %,d sessions to %s%n", requests, sessions, file);
+            return;
+        }
+        double speed = args.length > 2 && !args[2].equals("max") ? Double.parseDouble(args[2]) : 0;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Supplier<GameRules> rules = GameRules::defaults;
+        if (args.length > 4) {
+            GameRules loaded = GameRules.load(Paths.get(args[4]));
+            rules = () -> loaded;
+        }
+        TrafficRecorder.Recording recording = TrafficRecorder.load(file);
+        Report report = new TrafficReplayer(recording, rules, speed, threads).run();
+        System.out.printf("%,d requests from %,d sessions, recorded over %.1f s, replayed %s on %d threads in %.2f s: %,.0f requests/s%n",
+            recording.getRequestCount(), report.sessions, recording.getDurationMicros() / 1e6,
+            speed > 0 ? "at " + args[2] + "x" : "as fast as possible", threads, report.seconds, report.getRequestsPerSecond());
+        System.out.println("serve latency: " + report.latency.summary(1, "ns"));
+        if (speed > 0) {
+            System.out.println("schedule lag:  " + report.lag.summary(1_000, "us"));
+        }
+        System.out.printf("digest %016x%n", report.digest);
+    }
+}